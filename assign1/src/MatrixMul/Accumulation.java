@@ -0,0 +1,208 @@
+// Dot-product (i, j, k) kernels with a choice of storage and accumulation
+// precision, for trading speed against rounding error on long reductions:
+//
+//   DOUBLE        double storage, plain double sum (what OnMult does)
+//   FLOAT         float storage, float sum
+//   FLOAT_DOUBLE  float storage, double sum: half the memory traffic, and the
+//                 error is mostly the one-off rounding of the inputs to float
+//   KAHAN         double storage, Kahan-compensated sum
+//   PAIRWISE      double storage, pairwise (recursive halving) sum
+//
+// A plain sum of k terms has an error bound growing like k * u, Kahan's like
+// 2u independently of k, pairwise like log2(k) * u. Each product is still
+// rounded once before it is added.
+//
+// prepare() converts A to the storage type and B to the same type transposed
+// (n x k), so every k loop reads both operands contiguously and only the
+// accumulation differs between modes. C is always double.
+//
+// maxRelativeError() measures a result against a compensated dot product
+// (Dot2, Ogita, Rump and Oishi 2005), which is as accurate as a sum in twice
+// the working precision, on the original double inputs: for the float modes
+// the error includes the rounding of the inputs.
+public class Accumulation {
+
+    enum Mode { DOUBLE, FLOAT, FLOAT_DOUBLE, KAHAN, PAIRWISE }
+
+    // Pairwise sums fall back to a plain loop below this length.
+    private static final int PAIRWISE_LEAF = 32;
+
+    // A (m x k) and B transposed (n x k) in the storage type of mode; the
+    // arrays of the other type are null.
+    static class Operands {
+        final Mode mode;
+        final int m, k, n;
+        final double[] a, bt;
+        final float[] af, btf;
+
+        private Operands(Mode mode, int m, int k, int n, double[] a, double[] bt, float[] af, float[] btf) {
+            this.mode = mode;
+            this.m = m;
+            this.k = k;
+            this.n = n;
+            this.a = a;
+            this.bt = bt;
+            this.af = af;
+            this.btf = btf;
+        }
+
+        // Element accessors for Verifier, in the precision the kernel reads.
+        double a(int i, int p) {
+            return a != null ? a[i * k + p] : af[i * k + p];
+        }
+
+        double b(int p, int j) {
+            return bt != null ? bt[j * k + p] : btf[j * k + p];
+        }
+    }
+
+    static boolean floatStorage(Mode mode) {
+        return mode == Mode.FLOAT || mode == Mode.FLOAT_DOUBLE;
+    }
+
+    // a is m x k and b is k x n, both row-major.
+    static Operands prepare(Mode mode, int m, int k, int n, double[] a, double[] b) {
+        if (a.length < m * k || b.length < k * n) {
+            throw new IllegalArgumentException("Buffers too small for " + m + "x" + k + " * " + k + "x" + n);
+        }
+        if (floatStorage(mode)) {
+            float[] af = new float[m * k];
+            float[] btf = new float[n * k];
+            for (int e = 0; e < af.length; e++) {
+                af[e] = (float) a[e];
+            }
+            for (int p = 0; p < k; p++) {
+                for (int j = 0; j < n; j++) {
+                    btf[j * k + p] = (float) b[p * n + j];
+                }
+            }
+            return new Operands(mode, m, k, n, null, null, af, btf);
+        }
+        double[] bt = new double[n * k];
+        for (int p = 0; p < k; p++) {
+            for (int j = 0; j < n; j++) {
+                bt[j * k + p] = b[p * n + j];
+            }
+        }
+        return new Operands(mode, m, k, n, a.clone(), bt, null, null);
+    }
+
+    // C (m x n, row-major) = A * B in the mode the operands were prepared for;
+    // with threads > 1 rows are split across the fork/join pool.
+    static void multiply(Operands ops, double[] c, int threads) {
+        if (c.length < ops.m * ops.n) {
+            throw new IllegalArgumentException("C too small for " + ops.m + "x" + ops.n);
+        }
+        MatrixMultiplication.RowKernel rows = (rs, re) -> multiplyRows(ops, c, rs, re);
+        if (threads <= 1) {
+            rows.compute(0, ops.m);
+        } else {
+            MatrixMultiplication.runParallel(rows, ops.m, 1, threads);
+        }
+    }
+
+    static void multiplyRows(Operands ops, double[] c, int rowStart, int rowEnd) {
+        int k = ops.k, n = ops.n;
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowA = i * k;
+            for (int j = 0; j < n; j++) {
+                int rowB = j * k;
+                double sum;
+                switch (ops.mode) {
+                    case FLOAT:
+                        sum = dotFloat(ops.af, rowA, ops.btf, rowB, k);
+                        break;
+                    case FLOAT_DOUBLE:
+                        sum = dotFloatDouble(ops.af, rowA, ops.btf, rowB, k);
+                        break;
+                    case KAHAN:
+                        sum = dotKahan(ops.a, rowA, ops.bt, rowB, k);
+                        break;
+                    case PAIRWISE:
+                        sum = dotPairwise(ops.a, rowA, ops.bt, rowB, k);
+                        break;
+                    default:
+                        sum = dot(ops.a, rowA, ops.bt, rowB, k);
+                        break;
+                }
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    static double dot(double[] a, int aOff, double[] b, int bOff, int len) {
+        double temp = 0;
+        for (int p = 0; p < len; p++) {
+            temp += a[aOff + p] * b[bOff + p];
+        }
+        return temp;
+    }
+
+    static float dotFloat(float[] a, int aOff, float[] b, int bOff, int len) {
+        float temp = 0;
+        for (int p = 0; p < len; p++) {
+            temp += a[aOff + p] * b[bOff + p];
+        }
+        return temp;
+    }
+
+    static double dotFloatDouble(float[] a, int aOff, float[] b, int bOff, int len) {
+        double temp = 0;
+        for (int p = 0; p < len; p++) {
+            // the product of two floats is exact in double
+            temp += (double) a[aOff + p] * b[bOff + p];
+        }
+        return temp;
+    }
+
+    static double dotKahan(double[] a, int aOff, double[] b, int bOff, int len) {
+        double sum = 0, comp = 0;
+        for (int p = 0; p < len; p++) {
+            double y = a[aOff + p] * b[bOff + p] - comp;
+            double t = sum + y;
+            comp = (t - sum) - y;
+            sum = t;
+        }
+        return sum;
+    }
+
+    static double dotPairwise(double[] a, int aOff, double[] b, int bOff, int len) {
+        if (len <= PAIRWISE_LEAF) {
+            return dot(a, aOff, b, bOff, len);
+        }
+        int half = len >>> 1;
+        return dotPairwise(a, aOff, b, bOff, half) + dotPairwise(a, aOff + half, b, bOff + half, len - half);
+    }
+
+    // Dot2: TwoProduct (via fma) and TwoSum error terms summed alongside.
+    static double dotReference(double[] a, int aOff, double[] b, int bOff, int bStride, int len) {
+        double sum = 0, err = 0;
+        for (int p = 0; p < len; p++) {
+            double x = a[aOff + p], y = b[bOff + p * bStride];
+            double prod = x * y;
+            double prodErr = Math.fma(x, y, -prod);
+            double s = sum + prod;
+            double z = s - sum;
+            err += ((sum - (s - z)) + (prod - z)) + prodErr;
+            sum = s;
+        }
+        return sum + err;
+    }
+
+    // Largest |c - ref| / |ref| over up to sampleRows evenly spaced rows of C
+    // (every row when sampleRows >= m); a and b are the double inputs given
+    // to prepare(). Sampling keeps the O(k) reference per entry affordable at
+    // large sizes.
+    static double maxRelativeError(int m, int k, int n, double[] a, double[] b, double[] c, int sampleRows) {
+        int step = Math.max(1, m / Math.max(1, sampleRows));
+        double worst = 0;
+        for (int i = 0; i < m; i += step) {
+            for (int j = 0; j < n; j++) {
+                double ref = dotReference(a, i * k, b, j, n, k);
+                double diff = Math.abs(c[i * n + j] - ref);
+                worst = Math.max(worst, ref != 0 ? diff / Math.abs(ref) : diff);
+            }
+        }
+        return worst;
+    }
+}
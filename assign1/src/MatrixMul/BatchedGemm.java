@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+// Batched multiplication of many small matrices: C[p] = A[p] * B[p] for
+// p = 0..count-1, in one call.
+//
+// The batch lives in three contiguous row-major buffers: A[p] (m x k) starts
+// at p * m * k, B[p] (k x n) at p * k * n and C[p] (m x n) at p * m * n. No
+// per-matrix objects are allocated and C is overwritten, not accumulated.
+//
+// The kernel is chosen once per call from the shape. 4x4x4 keeps all of B in
+// sixteen locals and writes each C row with the k and j loops unrolled by
+// hand; only the loop over the four rows remains. When n is a multiple of 8
+// each C row is computed in 8-column strips held in eight locals, so C is
+// written once per strip instead of once per multiply-add as in the line
+// kernel. Square 8, 16 and 32 are not hand-written: their entry points only
+// call the strip kernel with the size as a literal, and any unrolling beyond
+// that is left to the JIT, which can fold the constant trip counts once it
+// inlines multiplyStrips. Other shapes fall back to the ikj loop.
+// With threads > 1 the batch (not the matrices) is split across the fork/join
+// pool.
+public class BatchedGemm {
+
+    // Batches smaller than this per thread are not worth forking.
+    private static final int MIN_PER_THREAD = 16;
+
+    interface Kernel {
+        void multiply(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff);
+    }
+
+    public static void multiply(int count, int m, int k, int n, double[] a, double[] b, double[] c, int threads) {
+        if (count < 0 || m < 0 || k < 0 || n < 0) {
+            throw new IllegalArgumentException("Negative size in " + count + " products of " + m + "x" + k + " * " + k + "x" + n);
+        }
+        if (a.length < (long) count * m * k || b.length < (long) count * k * n || c.length < (long) count * m * n) {
+            throw new IllegalArgumentException("Buffers too small for " + count + " products of " + m + "x" + k + " * " + k + "x" + n);
+        }
+        Kernel kernel = select(m, k, n);
+        int aStride = m * k, bStride = k * n, cStride = m * n;
+        MatrixMultiplication.RowKernel slice = (ps, pe) -> {
+            for (int p = ps; p < pe; p++) {
+                kernel.multiply(a, p * aStride, b, p * bStride, c, p * cStride);
+            }
+        };
+
+        if (threads <= 1 || count < MIN_PER_THREAD * 2) {
+            slice.compute(0, count);
+        } else {
+            MatrixMultiplication.runParallel(slice, count, MIN_PER_THREAD, threads);
+        }
+    }
+
+    static Kernel select(int m, int k, int n) {
+        if (m == 4 && k == 4 && n == 4) {
+            return BatchedGemm::multiply4;
+        }
+        if (m == k && k == n) {
+            switch (n) {
+                case 8:
+                    return BatchedGemm::multiply8;
+                case 16:
+                    return BatchedGemm::multiply16;
+                case 32:
+                    return BatchedGemm::multiply32;
+                default:
+                    break;
+            }
+        }
+        if (n % 8 == 0) {
+            return (a, aOff, b, bOff, c, cOff) -> multiplyStrips(m, k, n, a, aOff, b, bOff, c, cOff);
+        }
+        return (a, aOff, b, bOff, c, cOff) -> multiplyGeneric(m, k, n, a, aOff, b, bOff, c, cOff);
+    }
+
+    static void multiply4(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff) {
+        double b00 = b[bOff], b01 = b[bOff + 1], b02 = b[bOff + 2], b03 = b[bOff + 3];
+        double b10 = b[bOff + 4], b11 = b[bOff + 5], b12 = b[bOff + 6], b13 = b[bOff + 7];
+        double b20 = b[bOff + 8], b21 = b[bOff + 9], b22 = b[bOff + 10], b23 = b[bOff + 11];
+        double b30 = b[bOff + 12], b31 = b[bOff + 13], b32 = b[bOff + 14], b33 = b[bOff + 15];
+        for (int i = 0; i < 4; i++) {
+            int ai = aOff + i * 4, ci = cOff + i * 4;
+            double a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+            c[ci] = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+            c[ci + 1] = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+            c[ci + 2] = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+            c[ci + 3] = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        }
+    }
+
+    static void multiply8(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff) {
+        multiplyStrips(8, 8, 8, a, aOff, b, bOff, c, cOff);
+    }
+
+    static void multiply16(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff) {
+        multiplyStrips(16, 16, 16, a, aOff, b, bOff, c, cOff);
+    }
+
+    static void multiply32(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff) {
+        multiplyStrips(32, 32, 32, a, aOff, b, bOff, c, cOff);
+    }
+
+    static void multiplyStrips(int m, int k, int n, double[] a, int aOff, double[] b, int bOff, double[] c, int cOff) {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j += 8) {
+                multiplyStrip8(k, n, a, aOff + i * k, b, bOff + j, c, cOff + i * n + j);
+            }
+        }
+    }
+
+    // One row of A times an 8-column strip of B (row stride ldb) into eight
+    // consecutive C entries, accumulated in locals.
+    private static void multiplyStrip8(int k, int ldb, double[] a, int ai, double[] b, int bj, double[] c, int ci) {
+        double c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+        for (int p = 0; p < k; p++) {
+            double aip = a[ai + p];
+            int bp = bj + p * ldb;
+            c0 += aip * b[bp];
+            c1 += aip * b[bp + 1];
+            c2 += aip * b[bp + 2];
+            c3 += aip * b[bp + 3];
+            c4 += aip * b[bp + 4];
+            c5 += aip * b[bp + 5];
+            c6 += aip * b[bp + 6];
+            c7 += aip * b[bp + 7];
+        }
+        c[ci] = c0;
+        c[ci + 1] = c1;
+        c[ci + 2] = c2;
+        c[ci + 3] = c3;
+        c[ci + 4] = c4;
+        c[ci + 5] = c5;
+        c[ci + 6] = c6;
+        c[ci + 7] = c7;
+    }
+
+    static void multiplyGeneric(int m, int k, int n, double[] a, int aOff, double[] b, int bOff, double[] c, int cOff) {
+        for (int i = 0; i < m; i++) {
+            int ci = cOff + i * n;
+            Arrays.fill(c, ci, ci + n, 0.0);
+            for (int p = 0; p < k; p++) {
+                double aip = a[aOff + i * k + p];
+                int bp = bOff + p * n;
+                for (int j = 0; j < n; j++) {
+                    c[ci + j] += aip * b[bp + j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+
+// Picks the block size (and intra-tile loop order) for OnMultBlock by timing
+// every candidate on a probe matrix and keeping the fastest. The result is
+// written to blocktune.properties in the working directory together with a
+// fingerprint of the machine, and reused until the fingerprint changes or a
+// re-tune is requested from the menu.
+public class BlockAutotuner {
+
+    static final String PROFILE_FILE = "blocktune.properties";
+    static final int PROBE_SIZE = 512;
+    static final int[] CANDIDATES = {8, 16, 32, 48, 64, 96, 128, 192, 256};
+    static final int RUNS = 3;
+
+    enum LoopOrder { IJK, IKJ }
+
+    static class Profile {
+        final int bkSize;
+        final LoopOrder order;
+
+        Profile(int bkSize, LoopOrder order) {
+            this.bkSize = bkSize;
+            this.order = order;
+        }
+
+        @Override
+        public String toString() {
+            return bkSize + " (" + order.name().toLowerCase() + ")";
+        }
+    }
+
+    // Returns the saved profile for this machine, tuning and saving one first
+    // if there is none.
+    public static Profile profile() {
+        Profile saved = load();
+        if (saved != null) {
+            return saved;
+        }
+        Profile tuned = tune();
+        save(tuned);
+        return tuned;
+    }
+
+    public static Profile tune() {
+        double[][] pha = new double[PROBE_SIZE][PROBE_SIZE];
+        double[][] phb = new double[PROBE_SIZE][PROBE_SIZE];
+        double[][] phc = new double[PROBE_SIZE][PROBE_SIZE];
+        for (int i = 0; i < PROBE_SIZE; i++) {
+            Arrays.fill(pha[i], 1.0);
+            Arrays.fill(phb[i], (double) (i + 1));
+        }
+
+        System.out.println("Autotuning block size on a " + PROBE_SIZE + "x" + PROBE_SIZE + " probe...");
+        Profile best = null;
+        long bestTime = Long.MAX_VALUE;
+        for (LoopOrder order : LoopOrder.values()) {
+            for (int bkSize : CANDIDATES) {
+                // first run is JIT warm-up and is not counted
+                long time = Long.MAX_VALUE;
+                for (int run = 0; run <= RUNS; run++) {
+                    for (int i = 0; i < PROBE_SIZE; i++) {
+                        Arrays.fill(phc[i], 0.0);
+                    }
+                    long start = System.nanoTime();
+                    if (order == LoopOrder.IJK) {
+                        MatrixMultiplication.multBlockRows(pha, phb, phc, PROBE_SIZE, PROBE_SIZE, bkSize, 0, PROBE_SIZE);
+                    } else {
+                        MatrixMultiplication.multBlockRowsIkj(pha, phb, phc, PROBE_SIZE, PROBE_SIZE, bkSize, 0, PROBE_SIZE);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (run > 0) {
+                        time = Math.min(time, elapsed);
+                    }
+                }
+                System.out.printf("  %s block %3d: %.3f ms%n", order.name().toLowerCase(), bkSize, time / 1e6);
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = new Profile(bkSize, order);
+                }
+            }
+        }
+        System.out.println("Best block size: " + best);
+        return best;
+    }
+
+    static Profile load() {
+        Path path = Paths.get(PROFILE_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = new FileReader(path.toFile())) {
+            props.load(reader);
+            if (!fingerprint().equals(props.getProperty("fingerprint"))) {
+                return null;
+            }
+            String blockSize = props.getProperty("blockSize");
+            String loopOrder = props.getProperty("loopOrder");
+            if (blockSize == null || loopOrder == null) {
+                System.err.println("Ignoring incomplete " + PROFILE_FILE + ": blockSize or loopOrder missing");
+                return null;
+            }
+            return new Profile(Integer.parseInt(blockSize), LoopOrder.valueOf(loopOrder));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Ignoring unreadable " + PROFILE_FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    static void save(Profile profile) {
+        Properties props = new Properties();
+        props.setProperty("fingerprint", fingerprint());
+        props.setProperty("blockSize", Integer.toString(profile.bkSize));
+        props.setProperty("loopOrder", profile.order.name());
+        props.setProperty("probeSize", Integer.toString(PROBE_SIZE));
+        try (Writer writer = new FileWriter(PROFILE_FILE)) {
+            props.store(writer, "OnMultBlock autotune profile");
+        } catch (IOException e) {
+            System.err.println("Could not save " + PROFILE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // CPU model (when /proc/cpuinfo is readable), architecture and core count;
+    // a profile tuned on one box is not reused on another.
+    static String fingerprint() {
+        String model = "unknown";
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/cpuinfo"))) {
+                if (line.startsWith("model name")) {
+                    model = line.substring(line.indexOf(':') + 1).trim();
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // not Linux; fall back to arch and core count only
+        }
+        return model + "/" + System.getProperty("os.arch") + "/" + Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Distributed multiplication: a coordinator splits C across worker JVMs that
+// are reached over plain TCP sockets.
+//
+// C is cut into a pr x pc grid of tiles, one per worker. Worker (i, j) owns
+// C(i, j) and receives the A row band i and B column band j as a stream of
+// k-panels: for every panel it gets A(i, k0:k1) and B(k0:k1, j) and adds their
+// product into its C tile with PackedGemm, so it can compute one panel while
+// the next is still on the wire. This is SUMMA with the coordinator doing the
+// row and column broadcasts. A pc = 1 grid with a single panel is the plain
+// block-row split: each worker gets its rows of A and all of B.
+//
+// Wire format (big-endian, one request per connection):
+//   request:  int MAGIC, int m, int k, int n, int panel,
+//             then per panel: A tile m x kb, B tile kb x n (row-major doubles)
+//   response: int MAGIC, C tile m x n (row-major doubles)
+//
+// Start workers with "java DistributedGemm worker [port] [bind address]"; a
+// worker prints "LISTENING <port>" once it accepts connections. Workers bind
+// to loopback unless given an address, since the protocol has no
+// authentication. launchLocal starts workers as child processes on loopback.
+public class DistributedGemm {
+
+    static final int MAGIC = 0x47454d4d; // "GEMM"
+
+    // Doubles are converted to bytes in chunks of this many elements.
+    private static final int CHUNK = 8192;
+
+    enum Layout { BLOCK_ROWS, SUMMA_GRID }
+
+    // Workers launched as local processes; close() stops them.
+    static class LocalCluster implements AutoCloseable {
+        final List<Process> processes = new ArrayList<>();
+        final List<InetSocketAddress> workers = new ArrayList<>();
+
+        public void close() {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    // Starts count worker JVMs on loopback with this JVM's class path and
+    // waits until each one reports its port. Anything a worker prints after
+    // that is copied to stderr, so a chatty worker never blocks on a full pipe.
+    static LocalCluster launchLocal(int count) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("Need at least one worker, got " + count);
+        }
+        LocalCluster cluster = new LocalCluster();
+        try {
+            for (int w = 0; w < count; w++) {
+                String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+                Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        DistributedGemm.class.getName(), "worker", "0")
+                        .redirectErrorStream(true).start();
+                cluster.processes.add(process);
+
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line = reader.readLine();
+                if (line == null || !line.startsWith("LISTENING ")) {
+                    throw new IOException("Worker " + w + " failed to start: " + line);
+                }
+                int port = Integer.parseInt(line.substring(10).trim());
+                cluster.workers.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                drain(reader, "[worker " + w + "] ");
+            }
+        } catch (IOException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    private static void drain(BufferedReader reader, String prefix) {
+        Thread drainer = new Thread(() -> {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    System.err.println(prefix + line);
+                }
+            } catch (IOException e) {
+                // the worker was stopped
+            }
+        }, prefix.trim());
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    // Picks the most square pr x pc grid with pr * pc = workers.
+    static int[] gridShape(int workers) {
+        int pr = (int) Math.sqrt(workers);
+        while (workers % pr != 0) {
+            pr--;
+        }
+        return new int[] {pr, workers / pr};
+    }
+
+    // C = A * B on the given workers. For BLOCK_ROWS every worker gets a band
+    // of rows and all of B in one panel; for SUMMA_GRID the workers form a
+    // near-square grid and A/B are streamed in k-panels of the given width.
+    static void multiply(FlatMatrix a, FlatMatrix b, FlatMatrix c, List<InetSocketAddress> workers, Layout layout, int panel) throws IOException {
+        if (a.cols != b.rows || c.rows != a.rows || c.cols != b.cols) {
+            throw new IllegalArgumentException("Shape mismatch: " + a.rows + "x" + a.cols + " * " + b.rows + "x" + b.cols + " -> " + c.rows + "x" + c.cols);
+        }
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one worker");
+        }
+        if (layout == Layout.SUMMA_GRID && panel < 1) {
+            throw new IllegalArgumentException("Panel width must be at least 1, got " + panel);
+        }
+        int[] grid = layout == Layout.BLOCK_ROWS ? new int[] {workers.size(), 1} : gridShape(workers.size());
+        int kPanel = layout == Layout.BLOCK_ROWS ? a.cols : Math.max(1, Math.min(panel, a.cols));
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int w = 0; w < workers.size(); w++) {
+                int bi = w / grid[1], bj = w % grid[1];
+                int r0 = split(a.rows, grid[0], bi), r1 = split(a.rows, grid[0], bi + 1);
+                int c0 = split(b.cols, grid[1], bj), c1 = split(b.cols, grid[1], bj + 1);
+                InetSocketAddress address = workers.get(w);
+                pending.add(pool.submit(() -> {
+                    request(address, a, b, c, r0, r1, c0, c1, kPanel);
+                    return null;
+                }));
+            }
+            for (Future<?> f : pending) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for workers", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Worker request failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Boundary of part p when splitting total into parts nearly equal pieces.
+    private static int split(int total, int parts, int p) {
+        return (int) ((long) total * p / parts);
+    }
+
+    // Sends one C tile's inputs to a worker and copies its answer into C.
+    private static void request(InetSocketAddress address, FlatMatrix a, FlatMatrix b, FlatMatrix c,
+                                int r0, int r1, int c0, int c1, int panel) throws IOException {
+        int m = r1 - r0, n = c1 - c0, k = a.cols;
+        try (Socket socket = new Socket()) {
+            socket.connect(address, 5000);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeInt(m);
+            out.writeInt(k);
+            out.writeInt(n);
+            out.writeInt(panel);
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK * Double.BYTES);
+            for (int k0 = 0; k0 < k; k0 += panel) {
+                int k1 = Math.min(k0 + panel, k);
+                writeTile(out, buffer, a, r0, r1, k0, k1);
+                writeTile(out, buffer, b, k0, k1, c0, c1);
+            }
+            out.flush();
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Bad response header from " + address);
+            }
+            readTile(in, buffer, c, r0, r1, c0, c1);
+        }
+    }
+
+    // Writes rows r0..r1, columns c0..c1 of m row-major.
+    private static void writeTile(DataOutputStream out, ByteBuffer buffer, FlatMatrix m, int r0, int r1, int c0, int c1) throws IOException {
+        for (int i = r0; i < r1; i++) {
+            writeDoubles(out, buffer, m.data, i * m.cols + c0, c1 - c0);
+        }
+    }
+
+    private static void readTile(DataInputStream in, ByteBuffer buffer, FlatMatrix m, int r0, int r1, int c0, int c1) throws IOException {
+        for (int i = r0; i < r1; i++) {
+            readDoubles(in, buffer, m.data, i * m.cols + c0, c1 - c0);
+        }
+    }
+
+    // Bulk conversion through a DoubleBuffer view; far cheaper than a
+    // writeDouble call per element.
+    private static void writeDoubles(DataOutputStream out, ByteBuffer buffer, double[] data, int off, int len) throws IOException {
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        while (len > 0) {
+            int count = Math.min(len, CHUNK);
+            view.clear();
+            view.put(data, off, count);
+            out.write(buffer.array(), 0, count * Double.BYTES);
+            off += count;
+            len -= count;
+        }
+    }
+
+    private static void readDoubles(DataInputStream in, ByteBuffer buffer, double[] data, int off, int len) throws IOException {
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        while (len > 0) {
+            int count = Math.min(len, CHUNK);
+            in.readFully(buffer.array(), 0, count * Double.BYTES);
+            view.clear();
+            view.get(data, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    // Worker side: accepts connections and serves each on its own thread.
+    static void serve(int port, InetAddress bind) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, bind)) {
+            System.out.println("LISTENING " + server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket), "gemm-worker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private static void handle(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Bad request header");
+            }
+            int m = in.readInt(), k = in.readInt(), n = in.readInt(), panel = in.readInt();
+            if (m < 0 || k < 0 || n < 0 || panel <= 0) {
+                throw new IOException("Bad request shape " + m + "x" + k + "x" + n + " panel " + panel);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK * Double.BYTES);
+            double[] pa = new double[m * Math.min(panel, k)];
+            double[] pb = new double[Math.min(panel, k) * n];
+            double[] pc = new double[m * n];
+            for (int k0 = 0; k0 < k; k0 += panel) {
+                int kb = Math.min(panel, k - k0);
+                readDoubles(in, buffer, pa, 0, m * kb);
+                readDoubles(in, buffer, pb, 0, kb * n);
+                PackedGemm.multiply(m, n, kb, pa, 0, kb, pb, 0, n, pc, 0, n);
+            }
+
+            out.writeInt(MAGIC);
+            writeDoubles(out, buffer, pc, 0, pc.length);
+            out.flush();
+        } catch (EOFException e) {
+            System.err.println("Coordinator closed the connection early");
+        } catch (IOException e) {
+            System.err.println("Worker request failed: " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args[0].equals("worker")) {
+            int port = args.length >= 2 ? Integer.parseInt(args[1]) : 0;
+            InetAddress bind = args.length >= 3 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+            serve(port, bind);
+            return;
+        }
+        System.err.println("Usage: java DistributedGemm worker [port] [bind address]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,27 @@
+// Dense matrix stored as one contiguous row-major double[]: element (i, j)
+// lives at data[i * cols + j], the same layout matrixproduct.cpp uses for
+// pha/phb/phc. Rows are adjacent in memory, so there is no per-row pointer
+// chase and walking down a column is a fixed stride over a single array.
+public class FlatMatrix {
+    final int rows;
+    final int cols;
+    final double[] data;
+
+    public FlatMatrix(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = new double[rows * cols];
+    }
+
+    public int index(int i, int j) {
+        return i * cols + j;
+    }
+
+    public double get(int i, int j) {
+        return data[i * cols + j];
+    }
+
+    public void set(int i, int j, double value) {
+        data[i * cols + j] = value;
+    }
+}
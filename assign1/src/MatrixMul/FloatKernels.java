@@ -0,0 +1,110 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Naive, line and block kernels for float matrices in flat row-major
+// float[] storage (element (i, j) at i * cols + j), accumulating in float.
+//
+// GENERATED from PrimitiveKernels.java.template by `make kernels`; edit the
+// template, not the FloatKernels.java it produces. The float, double, int and
+// long families share every loop and differ only in element type, so any
+// difference in their timings comes from element width and arithmetic.
+public class FloatKernels {
+
+    static void multRows(float[] pha, float[] phb, float[] phc, int m_ar, int m_br, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowA = i * m_ar;
+            for (int j = 0; j < m_br; j++) {
+                float temp = 0;
+                for (int k = 0; k < m_ar; k++) {
+                    temp += pha[rowA + k] * phb[k * m_br + j];
+                }
+                phc[i * m_br + j] = temp;
+            }
+        }
+    }
+
+    static void multLineRows(float[] pha, float[] phb, float[] phc, int m_ar, int m_br, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowC = i * m_br;
+            for (int k = 0; k < m_ar; k++) {
+                float aik = pha[i * m_ar + k];
+                int rowB = k * m_br;
+                for (int j = 0; j < m_br; j++) {
+                    phc[rowC + j] += aik * phb[rowB + j];
+                }
+            }
+        }
+    }
+
+    static void multBlockRows(float[] pha, float[] phb, float[] phc, int m_ar, int m_br, int bkSize, int rowStart, int rowEnd) {
+        for (int bi = rowStart; bi < rowEnd; bi += bkSize) {
+            int iEnd = Math.min(bi + bkSize, rowEnd);
+            for (int bj = 0; bj < m_br; bj += bkSize) {
+                int jEnd = Math.min(bj + bkSize, m_br);
+                for (int bk = 0; bk < m_ar; bk += bkSize) {
+                    int kEnd = Math.min(bk + bkSize, m_ar);
+                    for (int i = bi; i < iEnd; i++) {
+                        for (int j = bj; j < jEnd; j++) {
+                            float temp = phc[i * m_br + j];
+                            for (int k = bk; k < kEnd; k++) {
+                                temp += pha[i * m_ar + k] * phb[k * m_br + j];
+                            }
+                            phc[i * m_br + j] = temp;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // m x k and k x n inputs filled like the double drivers (pha = 1, phb row
+    // i = i + 1), or with seeded random integers in [-9, 9], exact in every
+    // element type, when random; kernel is "mult", "line" or "block".
+    static MatrixBenchmark.Workload workload(String kernel, int m, int k, int n, int bkSize, boolean random) {
+        float[] pha = new float[m * k];
+        float[] phb = new float[k * n];
+        float[] phc = new float[m * n];
+        if (random) {
+            Random values = new Random(1);
+            for (int e = 0; e < pha.length; e++) {
+                pha[e] = values.nextInt(19) - 9;
+            }
+            for (int e = 0; e < phb.length; e++) {
+                phb[e] = values.nextInt(19) - 9;
+            }
+        } else {
+            Arrays.fill(pha, 1f);
+            for (int i = 0; i < k; i++) {
+                Arrays.fill(phb, i * n, (i + 1) * n, i + 1);
+            }
+        }
+
+        return new MatrixBenchmark.Workload() {
+            void reset() {
+                Arrays.fill(phc, 0f);
+            }
+
+            void run() {
+                switch (kernel) {
+                    case "mult":
+                        multRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "line":
+                        multLineRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "block":
+                        multBlockRows(pha, phb, phc, k, n, bkSize, 0, m);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown kernel: " + kernel);
+                }
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, (i, j) -> pha[i * k + j], (i, j) -> phb[i * n + j],
+                        (i, j) -> phc[i * n + j], Verifier.unitRoundoff(float.class));
+            }
+        };
+    }
+}
@@ -0,0 +1,202 @@
+// BLAS-style double GEMM on caller-owned row-major arrays:
+//
+//   C = alpha * op(A) * op(B) + beta * C
+//
+// op(X) is X, or X transposed when the matching trans flag is set; op(A) is
+// m x k, op(B) is k x n and C is m x n. Each operand is a sub-matrix of its
+// array starting at an offset, with a leading dimension (row stride) of at
+// least its stored column count, so blocks of larger matrices can be passed
+// without copying. As in BLAS, beta = 0 overwrites C without reading it and
+// alpha = 0 skips the product.
+//
+// The kernel is fixed per instance: NAIVE (dot products), LINE (ikj), BLOCK
+// (ijk inside bkSize tiles) or PACKED (PackedGemm's micro-kernel). All of them
+// read the operands through row/column strides, which is how the transposes
+// are handled without copies. An instance owns its RowWorkers (threads > 1,
+// static row slices) and, for PACKED, one set of pack buffers per worker, so
+// gemm() allocates no buffers of its own; close() stops the workers. Because
+// the workers and pack buffers are shared, an instance is not safe for
+// concurrent gemm() calls: use one Gemm per calling thread.
+public class Gemm implements AutoCloseable {
+
+    enum Kernel { NAIVE, LINE, BLOCK, PACKED }
+
+    private final Kernel kernel;
+    private final int bkSize;
+    private final RowWorkers workers;
+    // per worker, PACKED only
+    private final double[][] aPack, bPack, edge;
+
+    public Gemm(Kernel kernel, int bkSize, int threads) {
+        if (kernel == Kernel.BLOCK && bkSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive, got " + bkSize);
+        }
+        this.kernel = kernel;
+        this.bkSize = bkSize;
+        this.workers = threads > 1 ? new RowWorkers(threads) : null;
+        int slices = Math.max(threads, 1);
+        if (kernel == Kernel.PACKED) {
+            aPack = new double[slices][PackedGemm.A_PACK_SIZE];
+            bPack = new double[slices][PackedGemm.B_PACK_SIZE];
+            edge = new double[slices][PackedGemm.MR * PackedGemm.NR];
+        } else {
+            aPack = bPack = edge = null;
+        }
+    }
+
+    public void gemm(boolean transA, boolean transB, int m, int n, int k, double alpha,
+                     double[] a, int aOff, int lda,
+                     double[] b, int bOff, int ldb,
+                     double beta, double[] c, int cOff, int ldc) {
+        if (m < 0 || n < 0 || k < 0) {
+            throw new IllegalArgumentException("Negative dimension in " + m + "x" + k + " * " + k + "x" + n);
+        }
+        checkOperand("A", a, aOff, transA ? k : m, transA ? m : k, lda);
+        checkOperand("B", b, bOff, transB ? n : k, transB ? k : n, ldb);
+        checkOperand("C", c, cOff, m, n, ldc);
+
+        // element (i, p) of op(A) is at aOff + i * ars + p * acs, (p, j) of op(B) at bOff + p * brs + j * bcs
+        int ars = transA ? 1 : lda, acs = transA ? lda : 1;
+        int brs = transB ? 1 : ldb, bcs = transB ? ldb : 1;
+        boolean product = alpha != 0 && k > 0;
+
+        RowWorkers.SliceKernel slice = (t, rowStart, rowEnd) -> {
+            scale(beta, c, cOff, ldc, n, rowStart, rowEnd);
+            if (!product) {
+                return;
+            }
+            switch (kernel) {
+                case NAIVE:
+                    naiveRows(n, k, alpha, a, aOff, ars, acs, b, bOff, brs, bcs, c, cOff, ldc, rowStart, rowEnd);
+                    break;
+                case LINE:
+                    lineRows(n, k, alpha, a, aOff, ars, acs, b, bOff, brs, bcs, c, cOff, ldc, rowStart, rowEnd);
+                    break;
+                case BLOCK:
+                    blockRows(n, k, alpha, a, aOff, ars, acs, b, bOff, brs, bcs, c, cOff, ldc, bkSize, rowStart, rowEnd);
+                    break;
+                default:
+                    PackedGemm.multiply(rowEnd - rowStart, n, k, alpha,
+                            a, aOff + rowStart * ars, ars, acs, b, bOff, brs, bcs,
+                            c, cOff + rowStart * ldc, ldc, aPack[t], bPack[t], edge[t]);
+                    break;
+            }
+        };
+
+        if (workers == null) {
+            slice.compute(0, 0, m);
+        } else {
+            int align = kernel == Kernel.BLOCK ? bkSize : kernel == Kernel.PACKED ? PackedGemm.MR : 1;
+            workers.runSlices(slice, m, align);
+        }
+    }
+
+    // Full row-major operands without transposes: C = A * B.
+    public void multiply(int m, int n, int k, double[] a, double[] b, double[] c) {
+        gemm(false, false, m, n, k, 1.0, a, 0, Math.max(1, k), b, 0, Math.max(1, n), 0.0, c, 0, Math.max(1, n));
+    }
+
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.close();
+        }
+    }
+
+    private static void checkOperand(String name, double[] x, int off, int rows, int cols, int ld) {
+        if (ld < Math.max(1, cols)) {
+            throw new IllegalArgumentException(name + ": leading dimension " + ld + " is less than its " + cols + " columns");
+        }
+        if (rows > 0 && cols > 0 && (off < 0 || off + (long) (rows - 1) * ld + cols > x.length)) {
+            throw new IllegalArgumentException(name + ": " + rows + "x" + cols + " with leading dimension " + ld
+                    + " at offset " + off + " does not fit in " + x.length + " elements");
+        }
+    }
+
+    private static void scale(double beta, double[] c, int cOff, int ldc, int n, int rowStart, int rowEnd) {
+        if (beta == 1) {
+            return;
+        }
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowC = cOff + i * ldc;
+            for (int j = 0; j < n; j++) {
+                c[rowC + j] = beta == 0 ? 0.0 : beta * c[rowC + j];
+            }
+        }
+    }
+
+    static void naiveRows(int n, int k, double alpha,
+                          double[] a, int aOff, int ars, int acs,
+                          double[] b, int bOff, int brs, int bcs,
+                          double[] c, int cOff, int ldc, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowA = aOff + i * ars;
+            for (int j = 0; j < n; j++) {
+                c[cOff + i * ldc + j] += alpha * dot(a, rowA, acs, b, bOff + j * bcs, brs, 0, k);
+            }
+        }
+    }
+
+    static void lineRows(int n, int k, double alpha,
+                         double[] a, int aOff, int ars, int acs,
+                         double[] b, int bOff, int brs, int bcs,
+                         double[] c, int cOff, int ldc, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowC = cOff + i * ldc;
+            for (int p = 0; p < k; p++) {
+                double aip = alpha * a[aOff + i * ars + p * acs];
+                int rowB = bOff + p * brs;
+                if (bcs == 1) {
+                    for (int j = 0; j < n; j++) {
+                        c[rowC + j] += aip * b[rowB + j];
+                    }
+                } else {
+                    for (int j = 0; j < n; j++) {
+                        c[rowC + j] += aip * b[rowB + j * bcs];
+                    }
+                }
+            }
+        }
+    }
+
+    static void blockRows(int n, int k, double alpha,
+                          double[] a, int aOff, int ars, int acs,
+                          double[] b, int bOff, int brs, int bcs,
+                          double[] c, int cOff, int ldc, int bkSize, int rowStart, int rowEnd) {
+        for (int bi = rowStart; bi < rowEnd; bi += bkSize) {
+            int iEnd = Math.min(bi + bkSize, rowEnd);
+            for (int bj = 0; bj < n; bj += bkSize) {
+                int jEnd = Math.min(bj + bkSize, n);
+                for (int bk = 0; bk < k; bk += bkSize) {
+                    int kEnd = Math.min(bk + bkSize, k);
+                    for (int i = bi; i < iEnd; i++) {
+                        int rowA = aOff + i * ars;
+                        for (int j = bj; j < jEnd; j++) {
+                            c[cOff + i * ldc + j] += alpha * dot(a, rowA, acs, b, bOff + j * bcs, brs, bk, kEnd);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Sum over p in [p0, p1) of a[aRow + p * acs] * b[bCol + p * brs]; the
+    // unit-stride loops are split out so the JIT can drop the multiplies.
+    private static double dot(double[] a, int aRow, int acs, double[] b, int bCol, int brs, int p0, int p1) {
+        double temp = 0;
+        if (acs == 1 && brs == 1) {
+            for (int p = p0; p < p1; p++) {
+                temp += a[aRow + p] * b[bCol + p];
+            }
+        } else if (acs == 1) {
+            for (int p = p0; p < p1; p++) {
+                temp += a[aRow + p] * b[bCol + p * brs];
+            }
+        } else {
+            for (int p = p0; p < p1; p++) {
+                temp += a[aRow + p * acs] * b[bCol + p * brs];
+            }
+        }
+        return temp;
+    }
+}
@@ -0,0 +1,90 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+// Wraps a kernel run with the measurements MatrixBenchmark reports next to
+// the time: bytes allocated by all threads, GC time, and (when PerfCounters
+// can open them) L1/LLC data-cache misses and instructions. Every run is also
+// committed as a KernelRunEvent for JFR.
+public class KernelInstrumentation implements AutoCloseable {
+
+    // Measurements of one run; counters hold -1 when unavailable.
+    static class Sample {
+        long nanos;
+        long allocated;
+        long gcMillis;
+        long[] counters = {-1, -1, -1};
+    }
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final AutoCloseable counters;
+
+    KernelInstrumentation(boolean useCounters) {
+        AutoCloseable opened = null;
+        if (useCounters) {
+            try {
+                opened = PerfCounters.open();
+            } catch (LinkageError e) {
+                // PerfCounters needs --enable-preview; run without counters
+            }
+        }
+        counters = opened;
+    }
+
+    boolean hasCounters() {
+        return counters != null;
+    }
+
+    Sample run(String algorithm, int m, int k, int n, int bkSize, int threads, Runnable kernel) {
+        Sample sample = new Sample();
+        KernelRunEvent event = new KernelRunEvent();
+        long allocatedBefore = threadBean.getTotalThreadAllocatedBytes();
+        long gcBefore = gcMillis();
+
+        event.begin();
+        if (counters != null) {
+            ((PerfCounters) counters).start();
+        }
+        long start = System.nanoTime();
+        kernel.run();
+        sample.nanos = System.nanoTime() - start;
+        if (counters != null) {
+            sample.counters = ((PerfCounters) counters).stop();
+        }
+        event.end();
+
+        sample.allocated = threadBean.getTotalThreadAllocatedBytes() - allocatedBefore;
+        sample.gcMillis = gcMillis() - gcBefore;
+
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm;
+            event.rows = m;
+            event.inner = k;
+            event.size = n;
+            event.block = bkSize;
+            event.threads = threads;
+            event.allocated = sample.allocated;
+            event.gcTime = sample.gcMillis;
+            event.l1Misses = sample.counters[0];
+            event.llcMisses = sample.counters[1];
+            event.instructions = sample.counters[2];
+            event.commit();
+        }
+        return sample;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (counters != null) {
+            ((PerfCounters) counters).close();
+        }
+    }
+}
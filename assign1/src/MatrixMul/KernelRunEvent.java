@@ -0,0 +1,54 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// One timed kernel run, committed by KernelInstrumentation. Shows up in a
+// flight recording (e.g. -XX:StartFlightRecording=filename=kernels-%p.jfr)
+// under "Matrix Multiplication"; the event duration is the kernel time.
+// Counter fields are -1 when perf_event was not available.
+@Name("matrix.KernelRun")
+@Label("Kernel Run")
+@Category("Matrix Multiplication")
+@Description("One measured run of a matrix multiplication kernel")
+public class KernelRunEvent extends Event {
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Inner Dimension")
+    int inner;
+
+    @Label("Size")
+    @Description("Columns of the result; rows and inner dimension equal it for square runs")
+    int size;
+
+    @Label("Block Size")
+    int block;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+    @Label("GC Time")
+    @Timespan(Timespan.MILLISECONDS)
+    long gcTime;
+
+    @Label("L1 Data Cache Misses")
+    long l1Misses;
+
+    @Label("LLC Data Cache Misses")
+    long llcMisses;
+
+    @Label("Instructions")
+    long instructions;
+}
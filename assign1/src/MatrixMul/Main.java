@@ -1,4 +1,7 @@
 package g11.assign1.src.MatrixMul;
+
+import java.util.stream.IntStream;
+
 class Main {
   
   
@@ -44,23 +47,71 @@ class Main {
             System.out.println();
         }
     }
+    // Rows of the result handed to one parallel task, and rows of m2's
+    // transpose kept hot in cache while a task sweeps its rows of m1.
+    private static final int ROW_BLOCK = 16;
+    private static final int COL_BLOCK = 64;
+
     public static int[][] multiplyMatrix(int[][] m1, int[][] m2, int[] s1, int[]s2){
         if(s1[1] != s2[0]){
             return null;
         }
         int[][] result = new int[s1[0]][s2[1]];
+        int[][] m2t = transpose(m2, s2[0], s2[1]);  // column j of m2 is row j of m2t, copied once
 
-        for (int i = 0; i < s1[0]; i++) {  // Loop over rows of m1
-            for (int j = 0; j < s2[1]; j++) {  // Loop over columns of m2
-                int[] row = m1[i];
-                int[] col = new int[s2[0]];
-                for (int k = 0; k < s2[0]; k++) {
-                    col[k] = m2[k][j];
+        int rowBlocks = (s1[0] + ROW_BLOCK - 1) / ROW_BLOCK;
+        IntStream.range(0, rowBlocks).parallel().forEach(b -> {
+            int iEnd = Math.min((b + 1) * ROW_BLOCK, s1[0]);
+            for (int jb = 0; jb < s2[1]; jb += COL_BLOCK) {  // Block of columns of m2
+                int jEnd = Math.min(jb + COL_BLOCK, s2[1]);
+                for (int i = b * ROW_BLOCK; i < iEnd; i++) {  // Loop over rows of m1
+                    for (int j = jb; j < jEnd; j++) {  // Loop over columns of m2
+                        result[i][j] = multiplyLines(m1[i], m2t[j], s1[1], s2[0]);
+                    }
                 }
-                result[i][j] = multiplyLines(row, col, s1[1], s2[0]);
             }
+        });
+        return result;
+    }
+
+    // Same as multiplyMatrix but accumulates in long, so products of large
+    // int matrices (e.g. the 3000x3000 one in main) do not overflow.
+    public static long[][] multiplyMatrixLong(int[][] m1, int[][] m2, int[] s1, int[]s2){
+        if(s1[1] != s2[0]){
+            return null;
         }
+        long[][] result = new long[s1[0]][s2[1]];
+        int[][] m2t = transpose(m2, s2[0], s2[1]);
+
+        int rowBlocks = (s1[0] + ROW_BLOCK - 1) / ROW_BLOCK;
+        IntStream.range(0, rowBlocks).parallel().forEach(b -> {
+            int iEnd = Math.min((b + 1) * ROW_BLOCK, s1[0]);
+            for (int jb = 0; jb < s2[1]; jb += COL_BLOCK) {
+                int jEnd = Math.min(jb + COL_BLOCK, s2[1]);
+                for (int i = b * ROW_BLOCK; i < iEnd; i++) {
+                    int[] row = m1[i];
+                    for (int j = jb; j < jEnd; j++) {
+                        int[] col = m2t[j];
+                        long sum = 0;
+                        for (int k = 0; k < s1[1]; k++) {
+                            sum += (long) row[k] * col[k];
+                        }
+                        result[i][j] = sum;
+                    }
+                }
+            }
+        });
         return result;
     }
 
+    private static int[][] transpose(int[][] m, int noRows, int noCol) {
+        int[][] t = new int[noCol][noRows];
+        for (int i = 0; i < noRows; i++) {
+            for (int j = 0; j < noCol; j++) {
+                t[j][i] = m[i][j];
+            }
+        }
+        return t;
+    }
+
 }
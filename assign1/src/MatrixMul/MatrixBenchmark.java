@@ -0,0 +1,1038 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Benchmark harness for the MatrixMultiplication kernels.
+//
+// Unlike the interactive menu, which times one cold run with Instant.now(),
+// every (algorithm, size, block) point is run in fresh forked JVMs, each doing
+// warm-up iterations before the measured ones, timed with System.nanoTime().
+// Matrices are allocated and filled once per fork; phc is cleared before each
+// iteration outside the timed region.
+//
+// Each point is summarised as median/min/mean/stddev time and GFLOPS, printed
+// as a table or written as CSV or JSON rows. MatrixMultiplication runs the
+// same code when it is given command-line arguments (batch mode, CSV by
+// default).
+//
+// Usage (the *-vector algorithms also need --add-modules jdk.incubator.vector,
+// the *-offheap ones --enable-preview):
+//   java -cp classes MatrixBenchmark --algorithms=mult,line,block-par --sizes=600:3000:400
+//        --blocks=64,128 --threads=1,2,4 --forks=2 --warmup=3 --iterations=5
+//        --format=csv --output=results.csv
+//
+// --sizes and --threads take a list (600,1000) or a range min:max[:step];
+// --shapes=MxKxN,... replaces --sizes with rectangular products (A is M x K,
+// B is K x N), e.g. --shapes=4096x64x4096,64x4096x64 for the outer- and
+// inner-product extremes; GFLOPS count 2*M*K*N.
+// --repetitions is accepted as a synonym for --iterations. --blocks only
+// applies to block-* algorithms and --threads only to *-par and *-static ones.
+//
+// The mult/line/block-{float,double,int,long} algorithms run the generated
+// primitive kernel families (PrimitiveKernels.java.template) on flat arrays.
+//
+// spgemm and spgemm-par multiply random CSR matrices with --density non-zeros
+// (default 0.01); their GFLOPS use the dense 2n^3 count, so they read as the
+// rate a dense kernel would need to match them. spgemm-par starts its
+// fork/join pool inside the timed run, like the other *-par algorithms, so
+// inherited perf counters see its threads. spmv multiplies the random CSR A
+// (M x K) by N dense vectors of length K, one SpMV each; --shapes=MxKx1 is a
+// single SpMV.
+//
+// {mult,line,block,packed}-gemm and {block,packed}-gemm-par call the Gemm
+// library (C = A * B through gemm() with beta = 0) on flat arrays.
+//
+// acc-{double,float,float-double,kahan,pairwise} run the Accumulation modes
+// (dot-product kernel, B transposed) on random inputs in [0, 1); the menu's
+// option 22 reports their error against a compensated reference.
+//
+// block-{platform,forkjoin,virtual}-par run the (bi, bj) tiles of the block
+// kernel as separate tasks on a TileScheduler; --blocks sets the tile size,
+// so sweeping it compares the three dispatch models at several granularities.
+// Virtual threads ignore --threads and use the JVM's carrier pool.
+//
+// The *-static algorithms run on RowWorkers (fixed threads, static row
+// slices) instead of fork/join. --init=first-touch allocates and fills the
+// double[][] inputs in parallel on those same workers, so on multi-socket
+// machines each row lands on the NUMA node of the thread that computes it;
+// compare against --init=serial (the default) with -XX:+UseNUMA.
+//
+// --verify=freivalds checks every measured iteration's result with Verifier's
+// randomized O(n^2) test, --verify=full against a PackedGemm reference; both
+// run after the timed region and fail the point on a wrong result.
+// --tolerance overrides the relative error bound (default 2 * k * roundoff,
+// plus 2 * (k + n) * double roundoff for freivalds). strassen is checked
+// normwise against Strassen.normwiseErrorBound, which grows with --crossover
+// depth, since Strassen-Winograd has no componentwise bound.
+// Verified runs use seeded random inputs in [-1, 1); unverified timing runs
+// keep the patterned matrices the menu uses (every row of A is 1.0, row i of
+// B is i + 1), on which indexing mistakes cannot be seen.
+//
+// Each measured run goes through KernelInstrumentation: allocation and GC time
+// are always reported, cache-miss and instruction counts when perf_event is
+// reachable (--enable-preview, --counters=false to skip), and a KernelRunEvent
+// is emitted for JFR (add -XX:StartFlightRecording=filename=kernels-%p.jfr).
+// Inherited counters only see threads started after they open, and only add
+// a thread's counts when it exits, so algorithms whose workers outlive a run
+// (*-static, the *-gemm-par ones and the TileScheduler pools) report no
+// counters rather than those of the coordinating thread alone.
+public class MatrixBenchmark {
+
+    // Freivalds rounds per verified iteration.
+    static final int VERIFY_ROUNDS = 2;
+
+    static final String[] ALGORITHMS = {
+        "mult", "line", "block",
+        "mult-flat", "line-flat", "block-flat",
+        "mult-par", "line-par", "block-par",
+        "mult-static", "line-static", "block-static",
+        "line-vector", "line-flat-vector",
+        "packed", "recursive", "recursive-par",
+        "strassen",
+        "mult-offheap", "line-offheap", "block-offheap", "block-offheap-par",
+        "mult-float", "line-float", "block-float",
+        "mult-double", "line-double", "block-double",
+        "mult-int", "line-int", "block-int",
+        "mult-long", "line-long", "block-long",
+        "spgemm", "spgemm-par", "spmv",
+        "block-platform-par", "block-forkjoin-par", "block-virtual-par",
+        "acc-double", "acc-float", "acc-float-double", "acc-kahan", "acc-pairwise",
+        "mult-gemm", "line-gemm", "block-gemm", "packed-gemm", "block-gemm-par", "packed-gemm-par"
+    };
+
+    static class Params {
+        String[] algorithms = {"mult", "line", "block"};
+        Shape[] shapes = {new Shape(600, 600, 600), new Shape(1000, 1000, 1000)};
+        int[] blocks = {128};
+        int[] threads = {Runtime.getRuntime().availableProcessors()};
+        int crossover = 256;
+        int forks = 1;
+        int warmup = 3;
+        int iterations = 5;
+        String format = "table";
+        String output = null;
+        boolean counters = true;
+        String init = "serial";
+        double density = 0.01;
+        String verify = "none";
+        double tolerance = 0;
+        String[] args = {};
+    }
+
+    // C (m x n) = A (m x k) * B (k x n); written "n" when square, else "MxKxN".
+    static class Shape {
+        final int m, k, n;
+
+        Shape(int m, int k, int n) {
+            this.m = m;
+            this.k = k;
+            this.n = n;
+        }
+
+        static Shape parse(String text) {
+            String[] parts = text.split("x");
+            if (parts.length != 1 && parts.length != 3) {
+                throw new IllegalArgumentException("Expected a size n or a shape MxKxN, got: " + text);
+            }
+            int[] dims = Arrays.stream(parts).mapToInt(Integer::parseInt).toArray();
+            if (Arrays.stream(dims).anyMatch(d -> d < 1)) {
+                throw new IllegalArgumentException("Shape dimensions must be at least 1, got: " + text);
+            }
+            return dims.length == 1 ? new Shape(dims[0], dims[0], dims[0]) : new Shape(dims[0], dims[1], dims[2]);
+        }
+
+        @Override
+        public String toString() {
+            return m == k && k == n ? Integer.toString(n) : m + "x" + k + "x" + n;
+        }
+    }
+
+    // Summary of the measured times of one (algorithm, shape, block, threads) point.
+    static class Result {
+        String algorithm;
+        Shape shape;
+        int bkSize, threads, samples;
+        double medianMs, minMs, meanMs, stddevMs;
+        double allocatedMb, gcMs;
+        long[] counters = {-1, -1, -1};
+
+        double gflops() {
+            return MatrixBenchmark.gflops(shape, medianMs / 1e3);
+        }
+
+        double peakGflops() {
+            return MatrixBenchmark.gflops(shape, minMs / 1e3);
+        }
+    }
+
+    // Prepared inputs for one kernel; run() is the only timed part.
+    static abstract class Workload {
+        abstract void reset();
+        abstract void run();
+
+        // Releases resources that are not garbage collected (off-heap memory).
+        void close() {
+        }
+
+        // The product the last run() computed, for verification; null when the
+        // workload cannot expose it.
+        Verifier.Product product() {
+            return null;
+        }
+    }
+
+    // Whether the workload keeps worker threads alive across runs, which
+    // inherited perf counters cannot attribute to a run.
+    static boolean persistentWorkers(String algorithm) {
+        return algorithm.endsWith("-static") || algorithm.endsWith("-gemm-par")
+                || algorithm.equals("block-platform-par") || algorithm.equals("block-forkjoin-par")
+                || algorithm.equals("block-virtual-par");
+    }
+
+    static boolean usesBlock(String algorithm) {
+        return algorithm.startsWith("block");
+    }
+
+    // "line-float" -> "line"
+    static String kernelName(String algorithm) {
+        return algorithm.substring(0, algorithm.indexOf('-'));
+    }
+
+    static boolean usesThreads(String algorithm) {
+        return algorithm.endsWith("-par") || algorithm.endsWith("-static");
+    }
+
+    static Workload create(String algorithm, Shape shape, int bkSize, int threads, Params p) {
+        switch (algorithm) {
+            case "mult":
+            case "line":
+            case "block":
+            case "mult-par":
+            case "line-par":
+            case "block-par":
+            case "mult-static":
+            case "line-static":
+            case "block-static":
+            case "line-vector":
+            case "recursive":
+            case "recursive-par":
+            case "block-platform-par":
+            case "block-forkjoin-par":
+            case "block-virtual-par":
+                return arrayWorkload(algorithm, shape, bkSize, threads, p.init.equals("first-touch"), randomInputs(p));
+            case "mult-flat":
+            case "line-flat":
+            case "block-flat":
+            case "line-flat-vector":
+            case "packed":
+            case "strassen":
+                return flatWorkload(algorithm, shape, bkSize, p.crossover, randomInputs(p));
+            case "mult-offheap":
+            case "line-offheap":
+            case "block-offheap":
+            case "block-offheap-par":
+                return offHeapWorkload(algorithm, shape, bkSize, threads, randomInputs(p));
+            case "mult-float":
+            case "line-float":
+            case "block-float":
+                return FloatKernels.workload(kernelName(algorithm), shape.m, shape.k, shape.n, bkSize, randomInputs(p));
+            case "mult-double":
+            case "line-double":
+            case "block-double":
+                return DoubleKernels.workload(kernelName(algorithm), shape.m, shape.k, shape.n, bkSize, randomInputs(p));
+            case "mult-int":
+            case "line-int":
+            case "block-int":
+                return IntKernels.workload(kernelName(algorithm), shape.m, shape.k, shape.n, bkSize, randomInputs(p));
+            case "mult-long":
+            case "line-long":
+            case "block-long":
+                return LongKernels.workload(kernelName(algorithm), shape.m, shape.k, shape.n, bkSize, randomInputs(p));
+            case "spgemm":
+            case "spgemm-par":
+                return sparseWorkload(algorithm, shape, p.density, threads);
+            case "spmv":
+                return spmvWorkload(shape, p.density, randomInputs(p));
+            case "acc-double":
+            case "acc-float":
+            case "acc-float-double":
+            case "acc-kahan":
+            case "acc-pairwise":
+                return accumulationWorkload(algorithm, shape);
+            case "mult-gemm":
+            case "line-gemm":
+            case "block-gemm":
+            case "packed-gemm":
+            case "block-gemm-par":
+            case "packed-gemm-par":
+                return gemmWorkload(algorithm, shape, bkSize, threads, randomInputs(p));
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+    }
+
+    // With first-touch init the rows are allocated and filled by the same
+    // RowWorkers (and static partition) the *-static kernels compute with;
+    // with serial init everything is allocated and filled on this thread.
+    // Verified runs get seeded random inputs: with the patterned ones every row
+    // of A and every column of B are equal, so a kernel that reads the wrong
+    // row or column, or a transposed operand, still produces the right C.
+    static boolean randomInputs(Params p) {
+        return !p.verify.equals("none");
+    }
+
+    // Row i of input matrix id: uniform in [-1, 1) when random, seeded per row
+    // so it does not matter which thread fills it; else the pattern value.
+    static void fillInput(double[] data, int from, int to, int id, int i, double pattern, boolean random) {
+        if (!random) {
+            Arrays.fill(data, from, to, pattern);
+            return;
+        }
+        Random rows = new Random(((long) id << 32) + i);
+        for (int e = from; e < to; e++) {
+            data[e] = 2 * rows.nextDouble() - 1;
+        }
+    }
+
+    private static Workload arrayWorkload(String algorithm, Shape shape, int bkSize, int threads, boolean firstTouch, boolean random) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        int align = usesBlock(algorithm) ? bkSize : 1;
+        RowWorkers workers = firstTouch || algorithm.endsWith("-static") ? new RowWorkers(threads) : null;
+        TileScheduler scheduler = tileScheduler(algorithm, threads);
+        int tileRows = (m + bkSize - 1) / Math.max(bkSize, 1);
+        int tileCols = (n + bkSize - 1) / Math.max(bkSize, 1);
+
+        long initStart = System.nanoTime();
+        double[][] pha, phb, phc;
+        if (firstTouch) {
+            pha = workers.allocateRows(m, k, align, (row, i) -> fillInput(row, 0, k, 1, i, 1.0, random));
+            phb = workers.allocateRows(k, n, align, (row, i) -> fillInput(row, 0, n, 2, i, i + 1, random));
+            phc = workers.allocateRows(m, n, align, (row, i) -> { });
+        } else {
+            pha = new double[m][k];
+            phb = new double[k][n];
+            phc = new double[m][n];
+            for (int i = 0; i < m; i++) {
+                fillInput(pha[i], 0, k, 1, i, 1.0, random);
+            }
+            for (int i = 0; i < k; i++) {
+                fillInput(phb[i], 0, n, 2, i, i + 1, random);
+            }
+        }
+        System.err.printf("# init %s n=%s: %.3f ms (%s)%n", algorithm, shape, (System.nanoTime() - initStart) / 1e6,
+                firstTouch ? "first-touch, " + threads + " threads" : "serial");
+
+        return new Workload() {
+            void reset() {
+                if (workers != null) {
+                    workers.run((rs, re) -> {
+                        for (int i = rs; i < re; i++) {
+                            Arrays.fill(phc[i], 0.0);
+                        }
+                    }, m, align);
+                    return;
+                }
+                for (int i = 0; i < m; i++) {
+                    Arrays.fill(phc[i], 0.0);
+                }
+            }
+
+            @Override
+            void close() {
+                if (workers != null) {
+                    workers.close();
+                }
+                if (scheduler != null) {
+                    scheduler.close();
+                }
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, (i, j) -> pha[i][j], (i, j) -> phb[i][j], (i, j) -> phc[i][j], Verifier.DOUBLE_ROUNDOFF);
+            }
+
+            void run() {
+                switch (algorithm) {
+                    case "mult":
+                        MatrixMultiplication.multRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "line":
+                        MatrixMultiplication.multLineRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "block":
+                        MatrixMultiplication.multBlockRows(pha, phb, phc, k, n, bkSize, 0, m);
+                        break;
+                    case "mult-par":
+                        MatrixMultiplication.runParallel((rs, re) -> MatrixMultiplication.multRows(pha, phb, phc, k, n, rs, re), m, 1, threads);
+                        break;
+                    case "line-par":
+                        MatrixMultiplication.runParallel((rs, re) -> MatrixMultiplication.multLineRows(pha, phb, phc, k, n, rs, re), m, 1, threads);
+                        break;
+                    case "block-par":
+                        MatrixMultiplication.runParallel((rs, re) -> MatrixMultiplication.multBlockRows(pha, phb, phc, k, n, bkSize, rs, re), m, bkSize, threads);
+                        break;
+                    case "mult-static":
+                        workers.run((rs, re) -> MatrixMultiplication.multRows(pha, phb, phc, k, n, rs, re), m, 1);
+                        break;
+                    case "line-static":
+                        workers.run((rs, re) -> MatrixMultiplication.multLineRows(pha, phb, phc, k, n, rs, re), m, 1);
+                        break;
+                    case "block-static":
+                        workers.run((rs, re) -> MatrixMultiplication.multBlockRows(pha, phb, phc, k, n, bkSize, rs, re), m, bkSize);
+                        break;
+                    case "line-vector":
+                        VectorKernels.multLineRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "block-platform-par":
+                    case "block-forkjoin-par":
+                    case "block-virtual-par":
+                        scheduler.run(tileRows, tileCols, (bi, bj) -> MatrixMultiplication.multBlockTile(pha, phb, phc, m, k, n, bkSize, bi, bj));
+                        break;
+                    case "recursive":
+                        MatrixMultiplication.multRecursive(pha, phb, phc, 0, m, 0, n, 0, k);
+                        break;
+                    case "recursive-par":
+                        ForkJoinPool pool = new ForkJoinPool(threads);
+                        try {
+                            pool.invoke(new MatrixMultiplication.RecursiveMultTask(pha, phb, phc, 0, m, 0, n, 0, k));
+                        } finally {
+                            MatrixMultiplication.shutdownAndWait(pool);
+                        }
+                        break;
+                }
+            }
+        };
+    }
+
+    // Scheduler for the block-{platform,forkjoin,virtual}-par algorithms, null
+    // for the rest.
+    private static TileScheduler tileScheduler(String algorithm, int threads) {
+        switch (algorithm) {
+            case "block-platform-par": return TileScheduler.create(TileScheduler.Kind.PLATFORM, threads);
+            case "block-forkjoin-par": return TileScheduler.create(TileScheduler.Kind.FORK_JOIN, threads);
+            case "block-virtual-par": return TileScheduler.create(TileScheduler.Kind.VIRTUAL, threads);
+            default: return null;
+        }
+    }
+
+    private static Workload flatWorkload(String algorithm, Shape shape, int bkSize, int crossover, boolean random) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        FlatMatrix pha = new FlatMatrix(m, k);
+        FlatMatrix phb = new FlatMatrix(k, n);
+        FlatMatrix phc = new FlatMatrix(m, n);
+        for (int i = 0; i < m; i++) {
+            fillInput(pha.data, i * k, (i + 1) * k, 1, i, 1.0, random);
+        }
+        for (int i = 0; i < k; i++) {
+            fillInput(phb.data, i * n, (i + 1) * n, 2, i, i + 1, random);
+        }
+
+        return new Workload() {
+            void reset() {
+                Arrays.fill(phc.data, 0.0);
+            }
+
+            void run() {
+                switch (algorithm) {
+                    case "mult-flat":
+                        MatrixMultiplication.multRowsFlat(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "line-flat":
+                        MatrixMultiplication.multLineRowsFlat(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "block-flat":
+                        MatrixMultiplication.multBlockRowsFlat(pha, phb, phc, k, n, bkSize, 0, m);
+                        break;
+                    case "line-flat-vector":
+                        VectorKernels.multLineRowsFlat(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "packed":
+                        PackedGemm.multiply(pha, phb, phc);
+                        break;
+                    case "strassen":
+                        Strassen.multiply(pha, phb, phc, crossover);
+                        break;
+                }
+            }
+
+            @Override
+            Verifier.Product product() {
+                if (algorithm.equals("strassen")) {
+                    return Verifier.Product.normwise(m, k, n, pha::get, phb::get, phc::get,
+                            Strassen.normwiseErrorBound(m, k, n, crossover));
+                }
+                return new Verifier.Product(m, k, n, pha::get, phb::get, phc::get, Verifier.DOUBLE_ROUNDOFF);
+            }
+        };
+    }
+
+    private static Workload offHeapWorkload(String algorithm, Shape shape, int bkSize, int threads, boolean random) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        OffHeapMatrix pha = new OffHeapMatrix(m, k);
+        OffHeapMatrix phb = new OffHeapMatrix(k, n);
+        OffHeapMatrix phc = new OffHeapMatrix(m, n);
+        double[] row = new double[Math.max(k, n)];
+        for (int i = 0; i < m; i++) {
+            fillInput(row, 0, k, 1, i, 1.0, random);
+            for (int j = 0; j < k; j++) {
+                pha.set(i, j, row[j]);
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            fillInput(row, 0, n, 2, i, i + 1, random);
+            for (int j = 0; j < n; j++) {
+                phb.set(i, j, row[j]);
+            }
+        }
+
+        return new Workload() {
+            void reset() {
+                phc.fill(0.0);
+            }
+
+            void run() {
+                switch (algorithm) {
+                    case "mult-offheap":
+                        OffHeapMatrix.multRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "line-offheap":
+                        OffHeapMatrix.multLineRows(pha, phb, phc, k, n, 0, m);
+                        break;
+                    case "block-offheap":
+                        OffHeapMatrix.multBlockRows(pha, phb, phc, k, n, bkSize, 0, m);
+                        break;
+                    case "block-offheap-par":
+                        MatrixMultiplication.runParallel((rs, re) -> OffHeapMatrix.multBlockRows(pha, phb, phc, k, n, bkSize, rs, re), m, bkSize, threads);
+                        break;
+                }
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, pha::get, phb::get, phc::get, Verifier.DOUBLE_ROUNDOFF);
+            }
+
+            @Override
+            void close() {
+                pha.close();
+                phb.close();
+                phc.close();
+            }
+        };
+    }
+
+    private static Workload sparseWorkload(String algorithm, Shape shape, double density, int threads) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        SparseMatrix pha = SparseMatrix.random(m, k, density, 1);
+        SparseMatrix phb = SparseMatrix.random(k, n, density, 2);
+
+        return new Workload() {
+            SparseMatrix phc;
+
+            void reset() {
+                // SpGEMM builds a new result matrix on every run
+                phc = null;
+            }
+
+            void run() {
+                if (algorithm.equals("spgemm")) {
+                    phc = SparseMatrix.multiply(pha, phb);
+                } else {
+                    phc = SparseMatrix.multiplyParallel(pha, phb, threads);
+                }
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, pha::get, phb::get, phc::get, Verifier.DOUBLE_ROUNDOFF);
+            }
+        };
+    }
+
+    // Column j of the k x n dense X is the vector x[j], and y[j] = A * x[j]
+    // is column j of C.
+    private static Workload spmvWorkload(Shape shape, double density, boolean random) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        SparseMatrix pha = SparseMatrix.random(m, k, density, 1);
+        double[][] x = new double[n][k];
+        double[][] y = new double[n][m];
+        for (int j = 0; j < n; j++) {
+            fillInput(x[j], 0, k, 2, j, j + 1, random);
+        }
+
+        return new Workload() {
+            void reset() {
+                for (double[] column : y) {
+                    Arrays.fill(column, 0.0);
+                }
+            }
+
+            void run() {
+                for (int j = 0; j < n; j++) {
+                    pha.multiply(x[j], y[j]);
+                }
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, pha::get, (p, j) -> x[j][p], (i, j) -> y[j][i], Verifier.DOUBLE_ROUNDOFF);
+            }
+        };
+    }
+
+    // The Gemm library on flat arrays, as the OnMult drivers call it; the
+    // instance (workers, pack buffers) is created once, outside the timed run.
+    private static Workload gemmWorkload(String algorithm, Shape shape, int bkSize, int threads, boolean random) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        Gemm.Kernel kernel;
+        switch (algorithm.substring(0, algorithm.indexOf('-'))) {
+            case "mult": kernel = Gemm.Kernel.NAIVE; break;
+            case "line": kernel = Gemm.Kernel.LINE; break;
+            case "block": kernel = Gemm.Kernel.BLOCK; break;
+            default: kernel = Gemm.Kernel.PACKED; break;
+        }
+        Gemm gemm = new Gemm(kernel, bkSize, usesThreads(algorithm) ? threads : 1);
+        double[] pha = new double[m * k];
+        double[] phb = new double[k * n];
+        double[] phc = new double[m * n];
+        for (int i = 0; i < m; i++) {
+            fillInput(pha, i * k, (i + 1) * k, 1, i, 1.0, random);
+        }
+        for (int i = 0; i < k; i++) {
+            fillInput(phb, i * n, (i + 1) * n, 2, i, i + 1, random);
+        }
+
+        return new Workload() {
+            void reset() {
+                // beta = 0 overwrites C
+            }
+
+            void run() {
+                gemm.multiply(m, n, k, pha, phb, phc);
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, (i, j) -> pha[i * k + j], (i, j) -> phb[i * n + j],
+                        (i, j) -> phc[i * n + j], Verifier.DOUBLE_ROUNDOFF);
+            }
+
+            @Override
+            void close() {
+                gemm.close();
+            }
+        };
+    }
+
+    // Random inputs as in OnMultAccumulation, converted and transposed once
+    // before timing; the check reads the operands in their storage precision,
+    // so it sees only the accumulation error.
+    private static Workload accumulationWorkload(String algorithm, Shape shape) {
+        int m = shape.m, k = shape.k, n = shape.n;
+        Accumulation.Mode mode = Accumulation.Mode.valueOf(algorithm.substring(4).replace('-', '_').toUpperCase(Locale.ROOT));
+        Random random = new Random(1);
+        double[] a = new double[m * k];
+        double[] b = new double[k * n];
+        for (int e = 0; e < a.length; e++) {
+            a[e] = random.nextDouble();
+        }
+        for (int e = 0; e < b.length; e++) {
+            b[e] = random.nextDouble();
+        }
+        Accumulation.Operands ops = Accumulation.prepare(mode, m, k, n, a, b);
+        double[] phc = new double[m * n];
+
+        return new Workload() {
+            void reset() {
+                Arrays.fill(phc, 0.0);
+            }
+
+            void run() {
+                Accumulation.multiply(ops, phc, 1);
+            }
+
+            @Override
+            Verifier.Product product() {
+                return new Verifier.Product(m, k, n, ops::a, ops::b, (i, j) -> phc[i * n + j],
+                        mode == Accumulation.Mode.FLOAT ? Verifier.FLOAT_ROUNDOFF : Verifier.DOUBLE_ROUNDOFF);
+            }
+        };
+    }
+
+    // Runs warm-up plus measured iterations in this JVM and returns one
+    // instrumented sample per measured iteration.
+    static List<KernelInstrumentation.Sample> measure(String algorithm, Shape shape, int bkSize, int threads, Params p) throws Exception {
+        Workload workload = create(algorithm, shape, bkSize, threads, p);
+        try (KernelInstrumentation probe = new KernelInstrumentation(p.counters && !persistentWorkers(algorithm))) {
+            for (int w = 0; w < p.warmup; w++) {
+                workload.reset();
+                workload.run();
+            }
+
+            List<KernelInstrumentation.Sample> samples = new ArrayList<>();
+            int failures = 0;
+            for (int it = 0; it < p.iterations; it++) {
+                workload.reset();
+                samples.add(probe.run(algorithm, shape.m, shape.k, shape.n, bkSize, threads, workload::run));
+                if (!p.verify.equals("none") && !verify(workload, algorithm, shape, it, p)) {
+                    failures++;
+                }
+            }
+            if (failures > 0) {
+                throw new IllegalStateException(algorithm + " n=" + shape + " produced a wrong result in " + failures + " of " + p.iterations + " iterations");
+            }
+            return samples;
+        } finally {
+            workload.close();
+        }
+    }
+
+    // Checks the product of the iteration that just ran; called after the
+    // timed region, so it never counts towards the sample.
+    private static boolean verify(Workload workload, String algorithm, Shape shape, int iteration, Params p) {
+        Verifier.Product product = workload.product();
+        if (product == null) {
+            System.err.printf("# verify %s n=%s: not supported%n", algorithm, shape);
+            return true;
+        }
+        Verifier.Check check = p.verify.equals("full")
+                ? Verifier.full(product, p.tolerance)
+                : Verifier.freivalds(product, VERIFY_ROUNDS, p.tolerance, iteration);
+        if (!check.passed() || iteration == p.iterations - 1) {
+            System.err.printf("# verify %s n=%s iteration %d: %s%n", algorithm, shape, iteration, check);
+        }
+        return check.passed();
+    }
+
+    // Re-launches this class in a child JVM with the same JVM flags, classpath
+    // and options, and collects the "ITER <nanos> <allocated> <gc ms> <counters...>"
+    // lines it prints.
+    static List<KernelInstrumentation.Sample> fork(String algorithm, Shape shape, int bkSize, int threads, Params p) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MatrixBenchmark.class.getName());
+        command.add("--child");
+        command.add(algorithm);
+        command.add(shape.toString());
+        command.add(Integer.toString(bkSize));
+        command.add(Integer.toString(threads));
+        command.addAll(Arrays.asList(p.args));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<KernelInstrumentation.Sample> samples = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("ITER ")) {
+                    samples.add(parseSample(line.substring(5).trim()));
+                } else {
+                    System.err.println("[fork] " + line);
+                }
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new IOException("Forked benchmark exited with status " + exit);
+        }
+        return samples;
+    }
+
+    static String formatSample(KernelInstrumentation.Sample s) {
+        return s.nanos + " " + s.allocated + " " + s.gcMillis + " " + s.counters[0] + " " + s.counters[1] + " " + s.counters[2];
+    }
+
+    static KernelInstrumentation.Sample parseSample(String text) {
+        long[] v = Arrays.stream(text.split(" ")).mapToLong(Long::parseLong).toArray();
+        KernelInstrumentation.Sample s = new KernelInstrumentation.Sample();
+        s.nanos = v[0];
+        s.allocated = v[1];
+        s.gcMillis = v[2];
+        s.counters = new long[] {v[3], v[4], v[5]};
+        return s;
+    }
+
+    static double gflops(Shape s, double seconds) {
+        return 2.0 * s.m * s.k * s.n / (seconds * 1e9);
+    }
+
+    static Result summarize(String algorithm, Shape shape, int bkSize, int threads, List<KernelInstrumentation.Sample> samples) {
+        double[] ms = new double[samples.size()];
+        double mean = 0;
+        for (int i = 0; i < ms.length; i++) {
+            ms[i] = samples.get(i).nanos / 1e6;
+            mean += ms[i];
+        }
+        mean /= ms.length;
+
+        double variance = 0;
+        for (double t : ms) {
+            variance += (t - mean) * (t - mean);
+        }
+
+        Arrays.sort(ms);
+        Result r = new Result();
+        r.algorithm = algorithm;
+        r.shape = shape;
+        r.bkSize = bkSize;
+        r.threads = threads;
+        r.samples = ms.length;
+        r.medianMs = ms.length % 2 == 1 ? ms[ms.length / 2] : (ms[ms.length / 2 - 1] + ms[ms.length / 2]) / 2;
+        r.minMs = ms[0];
+        r.meanMs = mean;
+        r.stddevMs = ms.length > 1 ? Math.sqrt(variance / (ms.length - 1)) : 0;
+
+        // per-run means; a counter stays -1 if any run could not read it
+        for (KernelInstrumentation.Sample sample : samples) {
+            r.allocatedMb += sample.allocated / 1e6 / samples.size();
+            r.gcMs += (double) sample.gcMillis / samples.size();
+        }
+        for (int c = 0; c < r.counters.length; c++) {
+            long sum = 0;
+            for (KernelInstrumentation.Sample sample : samples) {
+                if (sample.counters[c] < 0) {
+                    sum = -1;
+                    break;
+                }
+                sum += sample.counters[c];
+            }
+            r.counters[c] = sum < 0 ? -1 : sum / samples.size();
+        }
+        return r;
+    }
+
+    static void printHeader(PrintStream out, String format) {
+        switch (format) {
+            case "csv":
+                out.println("algorithm,m,k,n,block,threads,samples,median_ms,min_ms,mean_ms,stddev_ms,gflops,peak_gflops,"
+                        + "alloc_mb,gc_ms,l1_dcm,llc_dcm,tot_ins");
+                break;
+            case "json":
+                out.println("[");
+                break;
+            default:
+                out.printf("%-18s %14s %6s %7s %5s %12s %12s %12s %10s %10s %8s%n",
+                        "Algorithm", "n", "block", "threads", "cnt", "median (ms)", "min (ms)", "stddev (ms)", "GFLOPS",
+                        "alloc (MB)", "GC (ms)");
+                break;
+        }
+    }
+
+    static void printResult(PrintStream out, String format, Result r, boolean first) {
+        switch (format) {
+            case "csv":
+                out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d%n",
+                        r.algorithm, r.shape.m, r.shape.k, r.shape.n, r.bkSize, r.threads, r.samples,
+                        r.medianMs, r.minMs, r.meanMs, r.stddevMs, r.gflops(), r.peakGflops(),
+                        r.allocatedMb, r.gcMs, r.counters[0], r.counters[1], r.counters[2]);
+                break;
+            case "json":
+                out.printf(Locale.ROOT, "%s  {\"algorithm\": \"%s\", \"m\": %d, \"k\": %d, \"n\": %d, \"block\": %d, \"threads\": %d, \"samples\": %d, "
+                        + "\"median_ms\": %.3f, \"min_ms\": %.3f, \"mean_ms\": %.3f, \"stddev_ms\": %.3f, \"gflops\": %.3f, \"peak_gflops\": %.3f, "
+                        + "\"alloc_mb\": %.3f, \"gc_ms\": %.3f, \"l1_dcm\": %d, \"llc_dcm\": %d, \"tot_ins\": %d}%n",
+                        first ? "" : ",", r.algorithm, r.shape.m, r.shape.k, r.shape.n, r.bkSize, r.threads, r.samples,
+                        r.medianMs, r.minMs, r.meanMs, r.stddevMs, r.gflops(), r.peakGflops(),
+                        r.allocatedMb, r.gcMs, r.counters[0], r.counters[1], r.counters[2]);
+                break;
+            default:
+                out.printf("%-18s %14s %6s %7s %5d %12.3f %12.3f %12.3f %10.3f %10.3f %8.1f%n",
+                        r.algorithm, r.shape, usesBlock(r.algorithm) ? Integer.toString(r.bkSize) : "-",
+                        usesThreads(r.algorithm) ? Integer.toString(r.threads) : "-",
+                        r.samples, r.medianMs, r.minMs, r.stddevMs, r.gflops(), r.allocatedMb, r.gcMs);
+                if (r.counters[0] >= 0) {
+                    out.printf("%-18s %s: %d  %s: %d  %s: %d%n", "", PerfCounters.NAMES[0], r.counters[0],
+                            PerfCounters.NAMES[1], r.counters[1], PerfCounters.NAMES[2], r.counters[2]);
+                }
+                break;
+        }
+    }
+
+    static void printFooter(PrintStream out, String format) {
+        if (format.equals("json")) {
+            out.println("]");
+        }
+    }
+
+    static Params parse(String[] args) {
+        Params p = new Params();
+        p.args = args;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+            String key = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "algorithms": p.algorithms = parseAlgorithms(value); break;
+                case "sizes": p.shapes = Arrays.stream(atLeast(key, parseSizes(value), 1)).mapToObj(n -> new Shape(n, n, n)).toArray(Shape[]::new); break;
+                case "shapes": p.shapes = Arrays.stream(value.split(",")).map(Shape::parse).toArray(Shape[]::new); break;
+                case "blocks": p.blocks = atLeast(key, parseInts(value), 1); break;
+                case "threads": p.threads = atLeast(key, parseSizes(value), 1); break;
+                case "crossover": p.crossover = atLeast(key, Integer.parseInt(value), 1); break;
+                case "forks": p.forks = atLeast(key, Integer.parseInt(value), 0); break;
+                case "warmup": p.warmup = atLeast(key, Integer.parseInt(value), 0); break;
+                case "iterations":
+                case "repetitions": p.iterations = atLeast(key, Integer.parseInt(value), 1); break;
+                case "format": p.format = parseFormat(value); break;
+                case "output": p.output = value; break;
+                case "counters": p.counters = Boolean.parseBoolean(value); break;
+                case "init": p.init = parseInit(value); break;
+                case "density": p.density = Double.parseDouble(value); break;
+                case "verify": p.verify = parseVerify(value); break;
+                case "tolerance": p.tolerance = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+        }
+        return p;
+    }
+
+    static String[] parseAlgorithms(String value) {
+        String[] algorithms = value.split(",");
+        for (String algorithm : algorithms) {
+            if (!Arrays.asList(ALGORITHMS).contains(algorithm)) {
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm + ", expected one of " + String.join(",", ALGORITHMS));
+            }
+        }
+        return algorithms;
+    }
+
+    static String parseFormat(String value) {
+        if (!value.equals("table") && !value.equals("csv") && !value.equals("json")) {
+            throw new IllegalArgumentException("Unknown format: " + value + ", expected table, csv or json");
+        }
+        return value;
+    }
+
+    static String parseVerify(String value) {
+        if (!value.equals("none") && !value.equals("freivalds") && !value.equals("full")) {
+            throw new IllegalArgumentException("Unknown verify mode: " + value + ", expected none, freivalds or full");
+        }
+        return value;
+    }
+
+    static String parseInit(String value) {
+        if (!value.equals("serial") && !value.equals("first-touch")) {
+            throw new IllegalArgumentException("Unknown init: " + value + ", expected serial or first-touch");
+        }
+        return value;
+    }
+
+    // "600,1000,1400" or "600:3000:400" (min:max[:step], inclusive, step 1 by
+    // default); also used for --threads.
+    static int[] parseSizes(String value) {
+        if (!value.contains(":")) {
+            return parseInts(value);
+        }
+        int[] range = Arrays.stream(value.split(":")).mapToInt(Integer::parseInt).toArray();
+        int step = range.length == 3 ? range[2] : 1;
+        if (range.length < 2 || range.length > 3 || step <= 0) {
+            throw new IllegalArgumentException("Expected min:max[:step], got: " + value);
+        }
+        List<Integer> sizes = new ArrayList<>();
+        for (int n = range[0]; n <= range[1]; n += step) {
+            sizes.add(n);
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static int[] parseInts(String value) {
+        return Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    // Rejects out-of-range options here, before anything is forked: a block
+    // size of 0 never terminates and 0 iterations leave nothing to summarize.
+    static int atLeast(String option, int value, int min) {
+        if (value < min) {
+            throw new IllegalArgumentException("--" + option + " must be at least " + min + ", got " + value);
+        }
+        return value;
+    }
+
+    static int[] atLeast(String option, int[] values, int min) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("--" + option + " needs at least one value");
+        }
+        for (int value : values) {
+            atLeast(option, value, min);
+        }
+        return values;
+    }
+
+    // All samples of one point: in this JVM with --forks=0, else from each fork.
+    static Result measurePoint(String algorithm, Shape shape, int bkSize, int threads, Params p) throws Exception {
+        List<KernelInstrumentation.Sample> samples = new ArrayList<>();
+        if (p.forks == 0) {
+            samples.addAll(measure(algorithm, shape, bkSize, threads, p));
+        } else {
+            for (int f = 0; f < p.forks; f++) {
+                samples.addAll(fork(algorithm, shape, bkSize, threads, p));
+            }
+        }
+        return summarize(algorithm, shape, bkSize, threads, samples);
+    }
+
+    // Measures every requested point and writes one result row per point.
+    static void run(String[] args) throws Exception {
+        Params p = parse(args);
+        PrintStream out = p.output == null ? System.out : new PrintStream(p.output);
+        // with --output, a table is echoed to stdout as points complete;
+        // otherwise notes go to stderr when stdout carries CSV/JSON
+        boolean echo = out != System.out;
+        PrintStream log = echo || p.format.equals("table") ? System.out : System.err;
+        try {
+            log.printf("# Forks: %d, warm-up: %d, iterations: %d%n", p.forks, p.warmup, p.iterations);
+            printHeader(out, p.format);
+            if (echo) {
+                printHeader(System.out, "table");
+            }
+
+            boolean first = true;
+            for (String algorithm : p.algorithms) {
+                int[] blocks = usesBlock(algorithm) ? p.blocks : new int[] {0};
+                int[] threadCounts = usesThreads(algorithm) ? p.threads : new int[] {1};
+                for (Shape shape : p.shapes) {
+                    for (int bkSize : blocks) {
+                        for (int threads : threadCounts) {
+                            Result result = measurePoint(algorithm, shape, bkSize, threads, p);
+                            printResult(out, p.format, result, first);
+                            out.flush();
+                            if (echo) {
+                                printResult(System.out, "table", result, first);
+                            }
+                            first = false;
+                        }
+                    }
+                }
+            }
+            printFooter(out, p.format);
+        } finally {
+            if (echo) {
+                out.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            Params p = parse(Arrays.copyOfRange(args, 5, args.length));
+            for (KernelInstrumentation.Sample sample : measure(args[1], Shape.parse(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), p)) {
+                System.out.println("ITER " + formatSample(sample));
+            }
+            return;
+        }
+        run(args);
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Matrix chain multiplication: A1 * A2 * ... * An evaluated in the order that
+// needs the fewest multiply-adds.
+//
+// plan() is the textbook O(n^3) dynamic program over dims, where Ai is
+// dims[i-1] x dims[i]: cost(i, j) = min over k of cost(i, k) + cost(k+1, j)
+// + dims[i-1] * dims[k] * dims[j]. The plan is a binary tree; the two subtrees
+// under a split are independent, so execution forks one on a ForkJoinPool
+// while computing the other. Each product is a PackedGemm call.
+//
+// Like Main.multiplyMatrix, multiply() returns null when adjacent shapes do
+// not match.
+public class MatrixChain {
+
+    static class Plan {
+        final int[] dims;
+        // split[i][j] = k: (Ai..Ak) * (Ak+1..Aj), 1-based as in dims
+        final int[][] split;
+        final long cost;
+
+        Plan(int[] dims, int[][] split, long cost) {
+            this.dims = dims;
+            this.split = split;
+            this.cost = cost;
+        }
+
+        // Multiply-adds of plain left-to-right evaluation, for comparison.
+        long leftToRightCost() {
+            long total = 0;
+            for (int j = 2; j < dims.length; j++) {
+                total += (long) dims[0] * dims[j - 1] * dims[j];
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            append(sb, 1, dims.length - 1);
+            return sb.toString();
+        }
+
+        private void append(StringBuilder sb, int i, int j) {
+            if (i == j) {
+                sb.append('A').append(i);
+                return;
+            }
+            sb.append('(');
+            append(sb, i, split[i][j]);
+            sb.append(" * ");
+            append(sb, split[i][j] + 1, j);
+            sb.append(')');
+        }
+    }
+
+    // dims has one more entry than the chain has matrices.
+    static Plan plan(int[] dims) {
+        if (dims.length < 2) {
+            throw new IllegalArgumentException("A chain needs at least two dimensions, got " + dims.length);
+        }
+        for (int d : dims) {
+            if (d < 1) {
+                throw new IllegalArgumentException("Dimensions must be at least 1, got " + Arrays.toString(dims));
+            }
+        }
+        int n = dims.length - 1;
+        long[][] cost = new long[n + 1][n + 1];
+        int[][] split = new int[n + 1][n + 1];
+        for (int length = 2; length <= n; length++) {
+            for (int i = 1; i + length - 1 <= n; i++) {
+                int j = i + length - 1;
+                cost[i][j] = Long.MAX_VALUE;
+                for (int k = i; k < j; k++) {
+                    long c = cost[i][k] + cost[k + 1][j] + (long) dims[i - 1] * dims[k] * dims[j];
+                    if (c < cost[i][j]) {
+                        cost[i][j] = c;
+                        split[i][j] = k;
+                    }
+                }
+            }
+        }
+        return new Plan(dims, split, n > 0 ? cost[1][n] : 0);
+    }
+
+    static FlatMatrix multiply(int threads, FlatMatrix... chain) {
+        if (chain.length == 0) {
+            return null;
+        }
+        int[] dims = new int[chain.length + 1];
+        dims[0] = chain[0].rows;
+        for (int i = 0; i < chain.length; i++) {
+            if (chain[i].rows != dims[i]) {
+                return null;
+            }
+            dims[i + 1] = chain[i].cols;
+        }
+        return execute(plan(dims), chain, threads);
+    }
+
+    static FlatMatrix execute(Plan plan, FlatMatrix[] chain, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new ProductTask(plan, chain, 1, chain.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Left-to-right evaluation with the same kernel, as the baseline.
+    static FlatMatrix multiplyLeftToRight(FlatMatrix... chain) {
+        FlatMatrix result = chain[0];
+        for (int i = 1; i < chain.length; i++) {
+            result = product(result, chain[i]);
+        }
+        return result;
+    }
+
+    private static FlatMatrix product(FlatMatrix a, FlatMatrix b) {
+        FlatMatrix c = new FlatMatrix(a.rows, b.cols);
+        PackedGemm.multiply(a, b, c);
+        return c;
+    }
+
+    // Product of Ai..Aj (1-based) following the plan. Never serialized; Plan
+    // and FlatMatrix are not Serializable.
+    @SuppressWarnings("serial")
+    private static class ProductTask extends RecursiveTask<FlatMatrix> {
+        private final Plan plan;
+        private final FlatMatrix[] chain;
+        private final int i, j;
+
+        ProductTask(Plan plan, FlatMatrix[] chain, int i, int j) {
+            this.plan = plan;
+            this.chain = chain;
+            this.i = i;
+            this.j = j;
+        }
+
+        @Override
+        protected FlatMatrix compute() {
+            if (i == j) {
+                return chain[i - 1];
+            }
+            int k = plan.split[i][j];
+            ProductTask left = new ProductTask(plan, chain, i, k);
+            ProductTask right = new ProductTask(plan, chain, k + 1, j);
+            left.fork();
+            FlatMatrix r = right.compute();
+            return product(left.join(), r);
+        }
+    }
+}
@@ -1,186 +1,960 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 public class MatrixMultiplication {
 
-    public static void OnMult(int m_ar, int m_br) {
-        Instant start, end;
-        double temp;
-        int i, j, k;
+    // The OnMult* drivers below allocate and fill the inputs (pha = 1, phb row
+    // i = i + 1), time one multiplication and print the results. OnMult,
+    // OnMultLine, OnMultBlock and their *Parallel versions keep the double[][]
+    // storage and run the row-range kernels, serially or as fork/join row
+    // tasks; the *GemmParallel and packed drivers time one Gemm call on flat
+    // double[] storage, with the Gemm and its workers created before timing
+    // starts.
+    public static void OnMult(int m_ar, int m_ac, int m_br) {
+        runArrays(m_ar, m_ac, m_br, (pha, phb, phc) -> multRows(pha, phb, phc, m_ac, m_br, 0, m_ar));
+    }
+
+    public static void OnMultLine(int m_ar, int m_ac, int m_br) {
+        runArrays(m_ar, m_ac, m_br, (pha, phb, phc) -> multLineRows(pha, phb, phc, m_ac, m_br, 0, m_ar));
+    }
+
+    public static void OnMultBlock(int m_ar, int m_ac, int m_br, int bkSize) {
+        runArrays(m_ar, m_ac, m_br, (pha, phb, phc) -> multBlockRows(pha, phb, phc, m_ac, m_br, bkSize, 0, m_ar));
+    }
 
-        double[][] pha = new double[m_ar][m_ar];
-        double[][] phb = new double[m_br][m_br];
+    interface ArrayKernel {
+        void multiply(double[][] pha, double[][] phb, double[][] phc);
+    }
+
+    private static void runArrays(int m_ar, int m_ac, int m_br, ArrayKernel kernel) {
+        double[][] pha = new double[m_ar][m_ac];
+        double[][] phb = new double[m_ac][m_br];
         double[][] phc = new double[m_ar][m_br];
 
-        for (i = 0; i < m_ar; i++) {
-            for (j = 0; j < m_ar; j++) {
-                pha[i][j] = 1.0;
+        for (int i = 0; i < m_ar; i++) {
+            Arrays.fill(pha[i], 1.0);
+        }
+
+        for (int i = 0; i < m_ac; i++) {
+            Arrays.fill(phb[i], (double) (i + 1));
+        }
+
+        Instant start = Instant.now();
+        kernel.multiply(pha, phb, phc);
+        Instant end = Instant.now();
+
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    private static void runGemm(Gemm.Kernel kernel, int m_ar, int m_ac, int m_br, int bkSize, int threads) {
+        double[] pha = new double[m_ar * m_ac];
+        double[] phb = new double[m_ac * m_br];
+        double[] phc = new double[m_ar * m_br];
+
+        Arrays.fill(pha, 1.0);
+        for (int i = 0; i < m_ac; i++) {
+            Arrays.fill(phb, i * m_br, (i + 1) * m_br, (double) (i + 1));
+        }
+
+        try (Gemm gemm = new Gemm(kernel, bkSize, threads)) {
+            Instant start = Instant.now();
+            gemm.multiply(m_ar, m_br, m_ac, pha, phb, phc);
+            Instant end = Instant.now();
+
+            printResults(start, end, m_ar, m_ac, m_br, phc);
+        }
+    }
+
+
+    // Cache-oblivious multiplication: the (i, j, k) iteration space is halved
+    // along its largest dimension until every side is at most RECURSION_BASE,
+    // so at some depth the sub-problem fits each cache level without a tuned
+    // block size. Works for any m_ar/m_br, not only powers of two.
+    static final int RECURSION_BASE = 32;
+
+    // Sub-problems smaller than this many multiply-adds are not forked.
+    static final long FORK_THRESHOLD = 1L << 18;
+
+    static void multRecursive(double[][] pha, double[][] phb, double[][] phc,
+                              int i0, int i1, int j0, int j1, int k0, int k1) {
+        int di = i1 - i0, dj = j1 - j0, dk = k1 - k0;
+        if (di <= RECURSION_BASE && dj <= RECURSION_BASE && dk <= RECURSION_BASE) {
+            for (int i = i0; i < i1; i++) {
+                for (int k = k0; k < k1; k++) {
+                    for (int j = j0; j < j1; j++) {
+                        phc[i][j] += pha[i][k] * phb[k][j];
+                    }
+                }
             }
+        } else if (di >= dj && di >= dk) {
+            int mid = i0 + di / 2;
+            multRecursive(pha, phb, phc, i0, mid, j0, j1, k0, k1);
+            multRecursive(pha, phb, phc, mid, i1, j0, j1, k0, k1);
+        } else if (dj >= dk) {
+            int mid = j0 + dj / 2;
+            multRecursive(pha, phb, phc, i0, i1, j0, mid, k0, k1);
+            multRecursive(pha, phb, phc, i0, i1, mid, j1, k0, k1);
+        } else {
+            int mid = k0 + dk / 2;
+            multRecursive(pha, phb, phc, i0, i1, j0, j1, k0, mid);
+            multRecursive(pha, phb, phc, i0, i1, j0, j1, mid, k1);
         }
+    }
 
-        for (i = 0; i < m_br; i++) {
-            for (j = 0; j < m_br; j++) {
-                phb[i][j] = (double) (i + 1);
+    // Fork/join form of multRecursive. Halves along i or j write disjoint parts
+    // of phc and run in parallel; halves along k update the same block of phc
+    // and stay sequential. Tasks only live inside one pool invocation and are
+    // never serialized.
+    @SuppressWarnings("serial")
+    static class RecursiveMultTask extends RecursiveAction {
+        private final double[][] pha, phb, phc;
+        private final int i0, i1, j0, j1, k0, k1;
+
+        RecursiveMultTask(double[][] pha, double[][] phb, double[][] phc,
+                          int i0, int i1, int j0, int j1, int k0, int k1) {
+            this.pha = pha;
+            this.phb = phb;
+            this.phc = phc;
+            this.i0 = i0;
+            this.i1 = i1;
+            this.j0 = j0;
+            this.j1 = j1;
+            this.k0 = k0;
+            this.k1 = k1;
+        }
+
+        @Override
+        protected void compute() {
+            int di = i1 - i0, dj = j1 - j0, dk = k1 - k0;
+            if ((long) di * dj * dk <= FORK_THRESHOLD) {
+                multRecursive(pha, phb, phc, i0, i1, j0, j1, k0, k1);
+            } else if (di >= dj && di >= dk) {
+                int mid = i0 + di / 2;
+                invokeAll(new RecursiveMultTask(pha, phb, phc, i0, mid, j0, j1, k0, k1),
+                          new RecursiveMultTask(pha, phb, phc, mid, i1, j0, j1, k0, k1));
+            } else if (dj >= dk) {
+                int mid = j0 + dj / 2;
+                invokeAll(new RecursiveMultTask(pha, phb, phc, i0, i1, j0, mid, k0, k1),
+                          new RecursiveMultTask(pha, phb, phc, i0, i1, mid, j1, k0, k1));
+            } else {
+                int mid = k0 + dk / 2;
+                new RecursiveMultTask(pha, phb, phc, i0, i1, j0, j1, k0, mid).compute();
+                new RecursiveMultTask(pha, phb, phc, i0, i1, j0, j1, mid, k1).compute();
             }
         }
+    }
 
-        start = Instant.now();
+    // threads == 1 runs the plain recursion; otherwise the recursive halves
+    // are fork/join tasks on a pool of that size.
+    public static void OnMultRecursive(int m_ar, int m_ac, int m_br, int threads) {
+        Instant start, end;
+        int i;
+
+        double[][] pha = new double[m_ar][m_ac];
+        double[][] phb = new double[m_ac][m_br];
+        double[][] phc = new double[m_ar][m_br];
 
         for (i = 0; i < m_ar; i++) {
-            for (j = 0; j < m_br; j++) {
+            Arrays.fill(pha[i], 1.0);
+        }
+
+        for (i = 0; i < m_ac; i++) {
+            Arrays.fill(phb[i], (double) (i + 1));
+        }
+
+        start = Instant.now();
+
+        if (threads == 1) {
+            multRecursive(pha, phb, phc, 0, m_ar, 0, m_br, 0, m_ac);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new RecursiveMultTask(pha, phb, phc, 0, m_ar, 0, m_br, 0, m_ac));
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        end = Instant.now();
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    // Row-range kernels: each computes rows [rowStart, rowEnd) of phc, so the
+    // fork/join drivers can hand disjoint row slices to different workers.
+    // m_ar is the inner dimension (columns of pha, rows of phb) and m_br the
+    // columns of phb and phc; with the rows given by the range, they cover any
+    // m x k by k x n product, not only square ones.
+    static void multRows(double[][] pha, double[][] phb, double[][] phc, int m_ar, int m_br, int rowStart, int rowEnd) {
+        double temp;
+        for (int i = rowStart; i < rowEnd; i++) {
+            for (int j = 0; j < m_br; j++) {
                 temp = 0;
-                for (k = 0; k < m_ar; k++) {
+                for (int k = 0; k < m_ar; k++) {
                     temp += pha[i][k] * phb[k][j];
                 }
                 phc[i][j] = temp;
             }
         }
+    }
 
-        end = Instant.now();
-        System.out.printf("Time: %.3f seconds\n", Duration.between(start, end).toMillis() / 1000.0);
+    static void multLineRows(double[][] pha, double[][] phb, double[][] phc, int m_ar, int m_br, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            for (int k = 0; k < m_ar; k++) {
+                for (int j = 0; j < m_br; j++) {
+                    phc[i][j] += pha[i][k] * phb[k][j];
+                }
+            }
+        }
+    }
 
-        // Calculate GFLOPs
-        double flops = 2.0 * m_ar * m_ar * m_ar;
-        double timeInSeconds = Duration.between(start, end).toMillis() / 1000.0;
-        double gflops = flops / (timeInSeconds * 1e9);
+    static void multBlockRows(double[][] pha, double[][] phb, double[][] phc, int m_ar, int m_br, int bkSize, int rowStart, int rowEnd) {
+        for (int bi = rowStart; bi < rowEnd; bi += bkSize) {
+            for (int bj = 0; bj < m_br; bj += bkSize) {
+                for (int bk = 0; bk < m_ar; bk += bkSize) {
+                    for (int i = bi; i < Math.min(bi + bkSize, rowEnd); i++) {
+                        for (int j = bj; j < Math.min(bj + bkSize, m_br); j++) {
+                            for (int k = bk; k < Math.min(bk + bkSize, m_ar); k++) {
+                                phc[i][j] += pha[i][k] * phb[k][j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
 
-        System.out.printf("Performance: %.2f GFLOPS\n", gflops);
+    // The (bi, bj) tile of multBlockRows on its own, bi and bj counted in tiles;
+    // used by TileScheduler to hand out tiles one at a time. phc has rows rows.
+    static void multBlockTile(double[][] pha, double[][] phb, double[][] phc, int rows, int m_ar, int m_br, int bkSize, int bi, int bj) {
+        int iEnd = Math.min((bi + 1) * bkSize, rows), jEnd = Math.min((bj + 1) * bkSize, m_br);
+        for (int bk = 0; bk < m_ar; bk += bkSize) {
+            for (int i = bi * bkSize; i < iEnd; i++) {
+                for (int j = bj * bkSize; j < jEnd; j++) {
+                    for (int k = bk; k < Math.min(bk + bkSize, m_ar); k++) {
+                        phc[i][j] += pha[i][k] * phb[k][j];
+                    }
+                }
+            }
+        }
+    }
 
-        System.out.println("Result matrix: ");
-        for (i = 0; i < 1; i++) {
-            for (j = 0; j < Math.min(10, m_br); j++) {
-                System.out.print(phc[i][j] + " ");
+    // Same tiling as multBlockRows with k moved outside j inside each tile, so
+    // the innermost loop walks rows of phb and phc instead of a column of phb.
+    static void multBlockRowsIkj(double[][] pha, double[][] phb, double[][] phc, int m_ar, int m_br, int bkSize, int rowStart, int rowEnd) {
+        for (int bi = rowStart; bi < rowEnd; bi += bkSize) {
+            for (int bj = 0; bj < m_br; bj += bkSize) {
+                for (int bk = 0; bk < m_ar; bk += bkSize) {
+                    for (int i = bi; i < Math.min(bi + bkSize, rowEnd); i++) {
+                        for (int k = bk; k < Math.min(bk + bkSize, m_ar); k++) {
+                            for (int j = bj; j < Math.min(bj + bkSize, m_br); j++) {
+                                phc[i][j] += pha[i][k] * phb[k][j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Flat-storage kernels: same loop orders as multRows/multLineRows/multBlockRows
+    // but over FlatMatrix, with the row offsets hoisted out of the inner loops.
+    static void multRowsFlat(FlatMatrix a, FlatMatrix b, FlatMatrix c, int m_ar, int m_br, int rowStart, int rowEnd) {
+        double[] pha = a.data, phb = b.data, phc = c.data;
+        double temp;
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowA = i * m_ar;
+            for (int j = 0; j < m_br; j++) {
+                temp = 0;
+                for (int k = 0; k < m_ar; k++) {
+                    temp += pha[rowA + k] * phb[k * m_br + j];
+                }
+                phc[i * m_br + j] = temp;
+            }
+        }
+    }
+
+    static void multLineRowsFlat(FlatMatrix a, FlatMatrix b, FlatMatrix c, int m_ar, int m_br, int rowStart, int rowEnd) {
+        double[] pha = a.data, phb = b.data, phc = c.data;
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowC = i * m_br;
+            for (int k = 0; k < m_ar; k++) {
+                double aik = pha[i * m_ar + k];
+                int rowB = k * m_br;
+                for (int j = 0; j < m_br; j++) {
+                    phc[rowC + j] += aik * phb[rowB + j];
+                }
             }
         }
-        System.out.println();
     }
 
-    public static void OnMultLine(int m_ar, int m_br) {
+    static void multBlockRowsFlat(FlatMatrix a, FlatMatrix b, FlatMatrix c, int m_ar, int m_br, int bkSize, int rowStart, int rowEnd) {
+        double[] pha = a.data, phb = b.data, phc = c.data;
+        for (int bi = rowStart; bi < rowEnd; bi += bkSize) {
+            int iEnd = Math.min(bi + bkSize, rowEnd);
+            for (int bj = 0; bj < m_br; bj += bkSize) {
+                int jEnd = Math.min(bj + bkSize, m_br);
+                for (int bk = 0; bk < m_ar; bk += bkSize) {
+                    int kEnd = Math.min(bk + bkSize, m_ar);
+                    for (int i = bi; i < iEnd; i++) {
+                        for (int j = bj; j < jEnd; j++) {
+                            double temp = phc[i * m_br + j];
+                            for (int k = bk; k < kEnd; k++) {
+                                temp += pha[i * m_ar + k] * phb[k * m_br + j];
+                            }
+                            phc[i * m_br + j] = temp;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    interface RowKernel {
+        void compute(int rowStart, int rowEnd);
+    }
+
+    // Splits [rowStart, rowEnd) in halves until a slice is at most grain rows.
+    // Split points are kept on multiples of align so block kernels only ever
+    // see whole block-rows. Never serialized; the kernel is a lambda.
+    @SuppressWarnings("serial")
+    static class RowTask extends RecursiveAction {
+        private final RowKernel kernel;
+        private final int rowStart, rowEnd, grain, align;
+
+        RowTask(RowKernel kernel, int rowStart, int rowEnd, int grain, int align) {
+            this.kernel = kernel;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.grain = grain;
+            this.align = align;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = rowEnd - rowStart;
+            int mid = rowStart + (rows / 2 / align) * align;
+            if (rows <= grain || mid == rowStart) {
+                kernel.compute(rowStart, rowEnd);
+                return;
+            }
+            invokeAll(new RowTask(kernel, rowStart, mid, grain, align),
+                      new RowTask(kernel, mid, rowEnd, grain, align));
+        }
+    }
+
+    // Runs kernel over rows [0, rows) on a new pool with the given
+    // parallelism, leaving a few tasks per worker so work stealing can even
+    // out the load. The pool is started and stopped inside the call, so a
+    // timed caller pays for its threads; callers that time repeated runs
+    // create a pool once and pass it in instead.
+    static void runParallel(RowKernel kernel, int rows, int align, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            runParallel(kernel, rows, align, pool);
+        } finally {
+            shutdownAndWait(pool);
+        }
+    }
+
+    // Stops a per-call pool and waits for its workers to exit: perf counters
+    // opened with inherit only add a child thread's counts when it exits, so
+    // the caller must not read them while the pool is still winding down.
+    static void shutdownAndWait(ForkJoinPool pool) {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // a worker is still finishing a task
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the fork/join pool", e);
+        }
+    }
+
+    static void runParallel(RowKernel kernel, int rows, int align, ForkJoinPool pool) {
+        int grain = Math.max(align, rows / (pool.getParallelism() * 4));
+        pool.invoke(new RowTask(kernel, 0, rows, grain, align));
+    }
+
+    // OnMultBlock with the block size and loop order from BlockAutotuner.
+    public static void OnMultBlockTuned(int m_ar, int m_ac, int m_br) {
+        BlockAutotuner.Profile profile = BlockAutotuner.profile();
+        System.out.println("Tuned block size: " + profile);
+
+        double[][] pha = new double[m_ar][m_ac];
+        double[][] phb = new double[m_ac][m_br];
+        double[][] phc = new double[m_ar][m_br];
+
+        for (int i = 0; i < m_ar; i++) {
+            Arrays.fill(pha[i], 1.0);
+        }
+
+        for (int i = 0; i < m_ac; i++) {
+            Arrays.fill(phb[i], (double) (i + 1));
+        }
+
+        Instant start = Instant.now();
+
+        if (profile.order == BlockAutotuner.LoopOrder.IJK) {
+            multBlockRows(pha, phb, phc, m_ac, m_br, profile.bkSize, 0, m_ar);
+        } else {
+            multBlockRowsIkj(pha, phb, phc, m_ac, m_br, profile.bkSize, 0, m_ar);
+        }
+
+        Instant end = Instant.now();
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    public static void OnMultParallel(int m_ar, int m_ac, int m_br, int threads) {
+        runArrays(m_ar, m_ac, m_br, (pha, phb, phc) -> runParallel(
+                (rowStart, rowEnd) -> multRows(pha, phb, phc, m_ac, m_br, rowStart, rowEnd), m_ar, 1, threads));
+    }
+
+    public static void OnMultLineParallel(int m_ar, int m_ac, int m_br, int threads) {
+        runArrays(m_ar, m_ac, m_br, (pha, phb, phc) -> runParallel(
+                (rowStart, rowEnd) -> multLineRows(pha, phb, phc, m_ac, m_br, rowStart, rowEnd), m_ar, 1, threads));
+    }
+
+    public static void OnMultBlockParallel(int m_ar, int m_ac, int m_br, int bkSize, int threads) {
+        runArrays(m_ar, m_ac, m_br, (pha, phb, phc) -> runParallel(
+                (rowStart, rowEnd) -> multBlockRows(pha, phb, phc, m_ac, m_br, bkSize, rowStart, rowEnd), m_ar, bkSize, threads));
+    }
+
+    public static void OnMultGemmParallel(int m_ar, int m_ac, int m_br, int threads) {
+        runGemm(Gemm.Kernel.NAIVE, m_ar, m_ac, m_br, 0, threads);
+    }
+
+    public static void OnMultLineGemmParallel(int m_ar, int m_ac, int m_br, int threads) {
+        runGemm(Gemm.Kernel.LINE, m_ar, m_ac, m_br, 0, threads);
+    }
+
+    public static void OnMultBlockGemmParallel(int m_ar, int m_ac, int m_br, int bkSize, int threads) {
+        runGemm(Gemm.Kernel.BLOCK, m_ar, m_ac, m_br, bkSize, threads);
+    }
+
+    public static void OnMultFlat(int m_ar, int m_ac, int m_br) {
+        FlatMatrix pha = new FlatMatrix(m_ar, m_ac);
+        FlatMatrix phb = new FlatMatrix(m_ac, m_br);
+        FlatMatrix phc = new FlatMatrix(m_ar, m_br);
+        initFlat(pha, phb);
+
+        Instant start = Instant.now();
+        multRowsFlat(pha, phb, phc, m_ac, m_br, 0, m_ar);
+        Instant end = Instant.now();
+
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    public static void OnMultLineFlat(int m_ar, int m_ac, int m_br) {
+        FlatMatrix pha = new FlatMatrix(m_ar, m_ac);
+        FlatMatrix phb = new FlatMatrix(m_ac, m_br);
+        FlatMatrix phc = new FlatMatrix(m_ar, m_br);
+        initFlat(pha, phb);
+
+        Instant start = Instant.now();
+        multLineRowsFlat(pha, phb, phc, m_ac, m_br, 0, m_ar);
+        Instant end = Instant.now();
+
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    public static void OnMultBlockFlat(int m_ar, int m_ac, int m_br, int bkSize) {
+        FlatMatrix pha = new FlatMatrix(m_ar, m_ac);
+        FlatMatrix phb = new FlatMatrix(m_ac, m_br);
+        FlatMatrix phc = new FlatMatrix(m_ar, m_br);
+        initFlat(pha, phb);
+
+        Instant start = Instant.now();
+        multBlockRowsFlat(pha, phb, phc, m_ac, m_br, bkSize, 0, m_ar);
+        Instant end = Instant.now();
+
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    public static void OnMultLineVector(int m_ar, int m_ac, int m_br) {
         Instant start, end;
-        int i, j, k;
+        int i, j;
 
-        double[][] pha = new double[m_ar][m_ar];
-        double[][] phb = new double[m_br][m_br];
+        double[][] pha = new double[m_ar][m_ac];
+        double[][] phb = new double[m_ac][m_br];
         double[][] phc = new double[m_ar][m_br];
 
         for (i = 0; i < m_ar; i++) {
-            for (j = 0; j < m_ar; j++) {
-                pha[i][j] = 1.0;
-            }
+            Arrays.fill(pha[i], 1.0);
         }
 
-        for (i = 0; i < m_br; i++) {
+        for (i = 0; i < m_ac; i++) {
             for (j = 0; j < m_br; j++) {
                 phb[i][j] = (double) (i + 1);
             }
         }
 
-        for (i = 0; i < m_ar; i++) {
-            Arrays.fill(phc[i], 0.0);
+        start = Instant.now();
+
+        VectorKernels.multLineRows(pha, phb, phc, m_ac, m_br, 0, m_ar);
+
+        end = Instant.now();
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    public static void OnMultPacked(int m_ar, int m_ac, int m_br) {
+        runGemm(Gemm.Kernel.PACKED, m_ar, m_ac, m_br, 0, 1);
+    }
+
+    // Reported GFLOPS use the classical 2n^3 flop count, i.e. the rate a cubic
+    // kernel would need to match this time.
+    public static void OnMultStrassen(int m_ar, int m_ac, int m_br, int crossover) {
+        FlatMatrix pha = new FlatMatrix(m_ar, m_ac);
+        FlatMatrix phb = new FlatMatrix(m_ac, m_br);
+        FlatMatrix phc = new FlatMatrix(m_ar, m_br);
+        initFlat(pha, phb);
+
+        Instant start = Instant.now();
+        Strassen.multiply(pha, phb, phc, crossover);
+        Instant end = Instant.now();
+
+        printResults(start, end, m_ar, m_ac, m_br, phc);
+    }
+
+    // kernel: 1 = naive, 2 = line, 3 = block. Matrices live off-heap for the
+    // duration of the call; threads > 1 splits rows as in runParallel.
+    public static void OnMultOffHeap(int m_ar, int m_ac, int m_br, int kernel, int bkSize, int threads) {
+        try (OffHeapMatrix pha = new OffHeapMatrix(m_ar, m_ac);
+             OffHeapMatrix phb = new OffHeapMatrix(m_ac, m_br);
+             OffHeapMatrix phc = new OffHeapMatrix(m_ar, m_br)) {
+            pha.fill(1.0);
+            for (int i = 0; i < m_ac; i++) {
+                phb.fillRow(i, (double) (i + 1));
+            }
+
+            RowKernel rows;
+            switch (kernel) {
+                case 1:
+                    rows = (rowStart, rowEnd) -> OffHeapMatrix.multRows(pha, phb, phc, m_ac, m_br, rowStart, rowEnd);
+                    break;
+                case 2:
+                    rows = (rowStart, rowEnd) -> OffHeapMatrix.multLineRows(pha, phb, phc, m_ac, m_br, rowStart, rowEnd);
+                    break;
+                case 3:
+                    if (bkSize < 1) {
+                        throw new IllegalArgumentException("Block size must be at least 1, got " + bkSize);
+                    }
+                    rows = (rowStart, rowEnd) -> OffHeapMatrix.multBlockRows(pha, phb, phc, m_ac, m_br, bkSize, rowStart, rowEnd);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown kernel " + kernel + ", expected 1, 2 or 3");
+            }
+
+            Instant start = Instant.now();
+            if (threads == 1) {
+                rows.compute(0, m_ar);
+            } else {
+                runParallel(rows, m_ar, kernel == 3 ? bkSize : 1, threads);
+            }
+            Instant end = Instant.now();
+
+            printTiming(start, end, m_ar, m_ac, m_br);
+            System.out.println("Result matrix: ");
+            for (int j = 0; j < Math.min(10, m_br); j++) {
+                System.out.print(phc.get(0, j) + " ");
+            }
+            System.out.println();
         }
+    }
 
-        start = Instant.now();
+    // A, B and C are memory-mapped files under java.io.tmpdir (override with
+    // -Djava.io.tmpdir=...), multiplied bkSize x bkSize tile by tile.
+    public static void OnMultOutOfCore(int m_ar, int m_ac, int m_br, int bkSize) {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (OutOfCoreGemm.MappedMatrix pha = new OutOfCoreGemm.MappedMatrix(dir, "pha", m_ar, m_ac, bkSize, OutOfCoreGemm.TileOrder.ROW_BANDS);
+             OutOfCoreGemm.MappedMatrix phb = new OutOfCoreGemm.MappedMatrix(dir, "phb", m_ac, m_br, bkSize, OutOfCoreGemm.TileOrder.COLUMN_BANDS);
+             OutOfCoreGemm.MappedMatrix phc = new OutOfCoreGemm.MappedMatrix(dir, "phc", m_ar, m_br, bkSize, OutOfCoreGemm.TileOrder.ROW_BANDS)) {
+            pha.fill((i, j) -> 1.0);
+            phb.fill((i, j) -> (double) (i + 1));
 
-        for (i = 0; i < m_ar; i++) {
-            for (k = 0; k < m_ar; k++) {
-                for (j = 0; j < m_br; j++) {
-                    phc[i][j] += pha[i][k] * phb[k][j];
-                }
+            Instant start = Instant.now();
+            OutOfCoreGemm.Stats stats = OutOfCoreGemm.multiply(pha, phb, phc);
+            Instant end = Instant.now();
+
+            printTiming(start, end, m_ar, m_ac, m_br);
+            System.out.printf("Compute: %.2f GFLOPS\n", 2.0 * m_ar * m_ac * m_br / stats.computeNanos);
+            System.out.printf("I/O: %.1f MB/s (%.1f MB moved in %.3f seconds)\n",
+                    stats.bytesMoved / 1e6 / (stats.ioNanos / 1e9), stats.bytesMoved / 1e6, stats.ioNanos / 1e9);
+
+            System.out.println("Result matrix: ");
+            for (int j = 0; j < Math.min(10, m_br); j++) {
+                System.out.print(phc.get(0, j) + " ");
             }
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println("Out-of-core multiplication failed: " + e.getMessage());
         }
+    }
 
-        end = Instant.now();
-        System.out.printf("Time: %.3f seconds\n", Duration.between(start, end).toMillis() / 1000.0);
+    // Runs on worker processes already started by the caller, so process start-up
+    // is not timed; the time includes shipping A/B tiles and gathering C.
+    public static void OnMultDistributed(int m_ar, int m_ac, int m_br, List<InetSocketAddress> workers, DistributedGemm.Layout layout, int panel) {
+        FlatMatrix pha = new FlatMatrix(m_ar, m_ac);
+        FlatMatrix phb = new FlatMatrix(m_ac, m_br);
+        FlatMatrix phc = new FlatMatrix(m_ar, m_br);
+        initFlat(pha, phb);
 
-        // Calculate GFLOPs
-        double flops = 2.0 * m_ar * m_ar * m_ar;
-        double timeInSeconds = Duration.between(start, end).toMillis() / 1000.0;
-        double gflops = flops / (timeInSeconds * 1e9);
+        try {
+            Instant start = Instant.now();
+            DistributedGemm.multiply(pha, phb, phc, workers, layout, panel);
+            Instant end = Instant.now();
 
-        System.out.printf("Performance: %.2f GFLOPS\n", gflops);
+            printResults(start, end, m_ar, m_ac, m_br, phc);
+        } catch (IOException e) {
+            System.out.println("Distributed multiplication failed: " + e.getMessage());
+        }
+    }
 
-        System.out.println("Result matrix: ");
-        for (i = 0; i < 1; i++) {
-            for (j = 0; j < Math.min(10, m_br); j++) {
-                System.out.print(phc[i][j] + " ");
+    // Multiplies count pairs of n x n matrices three ways: one double[][] product
+    // per pair allocated on the fly (the per-call pattern BatchedGemm replaces),
+    // then BatchedGemm on one thread and on the given threads. GFLOPS count the
+    // whole batch.
+    public static void OnMultBatched(int n, int count, int threads) {
+        double[] pha = new double[count * n * n];
+        double[] phb = new double[count * n * n];
+        double[] phc = new double[count * n * n];
+        Arrays.fill(pha, 1.0);
+        for (int p = 0; p < count; p++) {
+            for (int i = 0; i < n; i++) {
+                Arrays.fill(phb, (p * n + i) * n, (p * n + i + 1) * n, (double) (i + 1));
             }
         }
+        double flops = 2.0 * n * n * n * count;
+
+        long start = System.nanoTime();
+        for (int p = 0; p < count; p++) {
+            double[][] a = new double[n][n];
+            double[][] b = new double[n][n];
+            double[][] c = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(pha, (p * n + i) * n, a[i], 0, n);
+                System.arraycopy(phb, (p * n + i) * n, b[i], 0, n);
+            }
+            multLineRows(a, b, c, n, n, 0, n);
+            System.arraycopy(c[0], 0, phc, p * n * n, n);
+        }
+        long perCall = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        BatchedGemm.multiply(count, n, n, n, pha, phb, phc, 1);
+        long batched = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        BatchedGemm.multiply(count, n, n, n, pha, phb, phc, threads);
+        long parallel = System.nanoTime() - start;
+
+        System.out.printf("Per-call double[][]: %.3f ms, %.2f GFLOPS\n", perCall / 1e6, flops / perCall);
+        System.out.printf("Batched:             %.3f ms, %.2f GFLOPS\n", batched / 1e6, flops / batched);
+        System.out.printf("Batched, %d threads:  %.3f ms, %.2f GFLOPS\n", threads, parallel / 1e6, flops / parallel);
+
+        System.out.println("Result matrix: ");
+        for (int j = 0; j < Math.min(10, n); j++) {
+            System.out.print(phc[j] + " ");
+        }
         System.out.println();
     }
 
-    public static void OnMultBlock(int m_ar, int m_br, int bkSize) {
-        Instant start, end;
-        int i, j, k, bi, bj, bk;
-
-        double[][] pha = new double[m_ar][m_ar];
-        double[][] phb = new double[m_br][m_br];
+    // OnMultBlock with its (bi, bj) tiles dispatched by a TileScheduler; the
+    // scheduler is created before timing starts.
+    public static void OnMultBlockScheduled(int m_ar, int m_ac, int m_br, int bkSize, TileScheduler.Kind kind, int threads) {
+        if (bkSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1, got " + bkSize);
+        }
+        double[][] pha = new double[m_ar][m_ac];
+        double[][] phb = new double[m_ac][m_br];
         double[][] phc = new double[m_ar][m_br];
 
-        for (i = 0; i < m_ar; i++) {
+        for (int i = 0; i < m_ar; i++) {
             Arrays.fill(pha[i], 1.0);
         }
 
-        for (i = 0; i < m_br; i++) {
-            for (j = 0; j < m_br; j++) {
-                phb[i][j] = (double) (i + 1);
+        for (int i = 0; i < m_ac; i++) {
+            Arrays.fill(phb[i], (double) (i + 1));
+        }
+
+        int tileRows = (m_ar + bkSize - 1) / bkSize, tileCols = (m_br + bkSize - 1) / bkSize;
+        try (TileScheduler scheduler = TileScheduler.create(kind, threads)) {
+            Instant start = Instant.now();
+            scheduler.run(tileRows, tileCols, (bi, bj) -> multBlockTile(pha, phb, phc, m_ar, m_ac, m_br, bkSize, bi, bj));
+            Instant end = Instant.now();
+
+            printResults(start, end, m_ar, m_ac, m_br, phc);
+        }
+    }
+
+    // Multiplies a chain of random matrices in the order chosen by MatrixChain
+    // and left to right, both with PackedGemm, and compares the two.
+    public static void OnMultChain(int[] dims, int threads) {
+        Random random = new Random(1);
+        FlatMatrix[] chain = new FlatMatrix[dims.length - 1];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = new FlatMatrix(dims[i], dims[i + 1]);
+            for (int e = 0; e < chain[i].data.length; e++) {
+                chain[i].data[e] = random.nextDouble();
             }
         }
 
-        for (i = 0; i < m_ar; i++) {
-            Arrays.fill(phc[i], 0.0);
+        MatrixChain.Plan plan = MatrixChain.plan(dims);
+        System.out.println("Plan: " + plan);
+        if (plan.cost > 0) {
+            System.out.printf("Multiply-adds: %d planned, %d left to right (%.2fx)\n",
+                    plan.cost, plan.leftToRightCost(), (double) plan.leftToRightCost() / plan.cost);
+        } else {
+            System.out.printf("Multiply-adds: %d planned, %d left to right\n", plan.cost, plan.leftToRightCost());
         }
 
+        Instant start = Instant.now();
+        FlatMatrix planned = MatrixChain.execute(plan, chain, threads);
+        Instant end = Instant.now();
+        System.out.printf("Planned: %.3f seconds\n", Duration.between(start, end).toMillis() / 1000.0);
+
         start = Instant.now();
+        FlatMatrix leftToRight = MatrixChain.multiplyLeftToRight(chain);
+        end = Instant.now();
+        System.out.printf("Left to right: %.3f seconds\n", Duration.between(start, end).toMillis() / 1000.0);
 
-        for (bi = 0; bi < m_ar; bi += bkSize) {
-            for (bj = 0; bj < m_br; bj += bkSize) {
-                for (bk = 0; bk < m_ar; bk += bkSize) {
-                    for (i = bi; i < Math.min(bi + bkSize, m_ar); i++) {
-                        for (j = bj; j < Math.min(bj + bkSize, m_br); j++) {
-                            for (k = bk; k < Math.min(bk + bkSize, m_ar); k++) {
-                                phc[i][j] += pha[i][k] * phb[k][j];
-                            }
-                        }
+        System.out.println("Result matrix: ");
+        for (int j = 0; j < Math.min(10, planned.cols); j++) {
+            System.out.print(planned.data[j] + " ");
+        }
+        System.out.println();
+        double diff = 0;
+        for (int e = 0; e < planned.data.length; e++) {
+            double ref = leftToRight.data[e];
+            double d = Math.abs(planned.data[e] - ref);
+            diff = Math.max(diff, ref != 0 ? d / Math.abs(ref) : d);
+        }
+        System.out.printf("Max relative difference to left to right: %.3e\n", diff);
+    }
+
+    // Runs every Accumulation mode on the same random m x k and k x n inputs
+    // (uniform in [0, 1), so no cancellation hides rounding error) and reports
+    // time, GFLOPS and the max relative error against a compensated reference
+    // on up to ERROR_SAMPLE_ROWS rows. Conversion to float and the transpose
+    // of B are done before timing starts.
+    public static void OnMultAccumulation(int m_ar, int m_ac, int m_br, int threads) {
+        Random random = new Random(1);
+        double[] pha = new double[m_ar * m_ac];
+        double[] phb = new double[m_ac * m_br];
+        double[] phc = new double[m_ar * m_br];
+        for (int e = 0; e < pha.length; e++) {
+            pha[e] = random.nextDouble();
+        }
+        for (int e = 0; e < phb.length; e++) {
+            phb[e] = random.nextDouble();
+        }
+
+        System.out.printf("%-13s %8s %8s %10s %8s %14s\n", "Mode", "storage", "sum", "time (s)", "GFLOPS", "max rel error");
+        for (Accumulation.Mode mode : Accumulation.Mode.values()) {
+            Accumulation.Operands ops = Accumulation.prepare(mode, m_ar, m_ac, m_br, pha, phb);
+
+            Instant start = Instant.now();
+            Accumulation.multiply(ops, phc, threads);
+            Instant end = Instant.now();
+
+            double timeInSeconds = Duration.between(start, end).toMillis() / 1000.0;
+            double gflops = 2.0 * m_ar * m_ac * m_br / (timeInSeconds * 1e9);
+            double error = Accumulation.maxRelativeError(m_ar, m_ac, m_br, pha, phb, phc, ERROR_SAMPLE_ROWS);
+            String storage = Accumulation.floatStorage(mode) ? "float" : "double";
+            String sum = mode == Accumulation.Mode.FLOAT ? "float" : mode == Accumulation.Mode.KAHAN ? "kahan"
+                    : mode == Accumulation.Mode.PAIRWISE ? "pairwise" : "double";
+            System.out.printf("%-13s %8s %8s %10.3f %8.2f %14.3e\n", mode, storage, sum, timeInSeconds, gflops, error);
+        }
+    }
+
+    // Rows of C checked against the compensated reference by OnMultAccumulation.
+    private static final int ERROR_SAMPLE_ROWS = 16;
+
+    // For each density, times SpGEMM (serial and parallel Gustavson) against the
+    // flat line kernel on the same random n x n inputs, to find where sparse
+    // storage stops paying off. Times use System.nanoTime since sparse runs at
+    // low density take well under a millisecond.
+    public static void OnMultSparse(int n, double[] densities, int threads) {
+        System.out.printf("%8s %10s %14s %14s %14s %9s %12s %12s\n", "density", "nnz(A)", "SpGEMM (ms)", "SpGEMM-par",
+                "line (ms)", "speedup", "SpMV (ms)", "dense MV");
+        double[] x = new double[n];
+        for (int j = 0; j < n; j++) {
+            x[j] = j + 1;
+        }
+        double[] y = new double[n];
+        double[] denseY = new double[n];
+        // created once, so SpGEMM-par is timed without starting its threads
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (double density : densities) {
+                SparseMatrix pha = SparseMatrix.random(n, n, density, 1);
+                SparseMatrix phb = SparseMatrix.random(n, n, density, 2);
+                FlatMatrix denseA = pha.toDense();
+                FlatMatrix denseB = phb.toDense();
+                FlatMatrix phc = new FlatMatrix(n, n);
+
+                long start = System.nanoTime();
+                SparseMatrix sparseC = SparseMatrix.multiply(pha, phb);
+                double sparseMs = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                SparseMatrix.multiplyParallel(pha, phb, pool);
+                double parallelMs = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                multLineRowsFlat(denseA, denseB, phc, n, n, 0, n);
+                double denseMs = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                pha.multiply(x, y);
+                double spmvMs = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    double sum = 0;
+                    for (int j = 0; j < n; j++) {
+                        sum += denseA.data[i * n + j] * x[j];
                     }
+                    denseY[i] = sum;
                 }
+                double denseMvMs = (System.nanoTime() - start) / 1e6;
+
+                System.out.printf("%8.4f %10d %14.3f %14.3f %14.3f %8.2fx %12.3f %12.3f\n", density, pha.nonZeros(),
+                        sparseMs, parallelMs, denseMs, denseMs / Math.min(sparseMs, parallelMs), spmvMs, denseMvMs);
+                checkSparse(sparseC, phc, y, denseY);
             }
+        } finally {
+            pool.shutdown();
         }
+    }
 
-        end = Instant.now();
+    // Compares the first, middle and last rows of the SpGEMM result, and all
+    // of the SpMV result, with the dense ones; both sum the same products in
+    // the same order, so only a wrong index can make them differ.
+    private static void checkSparse(SparseMatrix sparseC, FlatMatrix denseC, double[] y, double[] denseY) {
+        int n = denseC.rows;
+        for (int i : new int[] {0, n / 2, n - 1}) {
+            for (int j = 0; j < denseC.cols; j++) {
+                if (Math.abs(sparseC.get(i, j) - denseC.get(i, j)) > 1e-12 * Math.abs(denseC.get(i, j))) {
+                    System.out.printf("Warning: SpGEMM and dense results differ at (%d, %d)\n", i, j);
+                    return;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (Math.abs(y[i] - denseY[i]) > 1e-12 * Math.abs(denseY[i])) {
+                System.out.printf("Warning: SpMV and dense results differ at row %d\n", i);
+                return;
+            }
+        }
+    }
+
+    // pha = 1.0 everywhere, phb row i = i + 1, as in the double[][] drivers.
+    private static void initFlat(FlatMatrix pha, FlatMatrix phb) {
+        Arrays.fill(pha.data, 1.0);
+        for (int i = 0; i < phb.rows; i++) {
+            Arrays.fill(phb.data, i * phb.cols, (i + 1) * phb.cols, (double) (i + 1));
+        }
+    }
+
+    private static void printResults(Instant start, Instant end, int m_ar, int m_ac, int m_br, double[][] phc) {
+        printTiming(start, end, m_ar, m_ac, m_br);
+
+        System.out.println("Result matrix: ");
+        for (int j = 0; j < Math.min(10, m_br); j++) {
+            System.out.print(phc[0][j] + " ");
+        }
+        System.out.println();
+    }
+
+    private static void printResults(Instant start, Instant end, int m_ar, int m_ac, int m_br, FlatMatrix phc) {
+        printResults(start, end, m_ar, m_ac, m_br, phc.data);
+    }
+
+    private static void printResults(Instant start, Instant end, int m_ar, int m_ac, int m_br, double[] phc) {
+        printTiming(start, end, m_ar, m_ac, m_br);
+
+        System.out.println("Result matrix: ");
+        for (int j = 0; j < Math.min(10, m_br); j++) {
+            System.out.print(phc[j] + " ");
+        }
+        System.out.println();
+    }
+
+    private static void printTiming(Instant start, Instant end, int m_ar, int m_ac, int m_br) {
         System.out.printf("Time: %.3f seconds\n", Duration.between(start, end).toMillis() / 1000.0);
 
         // Calculate GFLOPs
-        double flops = 2.0 * m_ar * m_ar * m_ar;
+        double flops = 2.0 * m_ar * m_ac * m_br;
         double timeInSeconds = Duration.between(start, end).toMillis() / 1000.0;
         double gflops = flops / (timeInSeconds * 1e9);
 
         System.out.printf("Performance: %.2f GFLOPS\n", gflops);
+    }
 
-        System.out.println("Result matrix: ");
-        for (i = 0; i < 1; i++) {
-            for (j = 0; j < Math.min(10, m_br); j++) {
-                System.out.print(phc[i][j] + " ");
+    public static void main(String[] args) {
+        // With arguments, run unattended through MatrixBenchmark and emit CSV
+        // unless --format says otherwise, e.g.
+        //   java -cp classes MatrixMultiplication --algorithms=line,block --sizes=600:3000:400 --output=java.csv
+        if (args.length > 0) {
+            String[] batchArgs = new String[args.length + 1];
+            batchArgs[0] = "--format=csv";
+            System.arraycopy(args, 0, batchArgs, 1, args.length);
+            try {
+                MatrixBenchmark.run(batchArgs);
+            } catch (Exception e) {
+                System.err.println("Batch run failed: " + e.getMessage());
+                System.exit(1);
             }
+            return;
         }
-        System.out.println();
-    }
 
-    public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
-        int lin, col, blockSize;
+        int lin, inner, col, rows, depth, blockSize, threads;
         int op;
         int n_min, n_max, inc;
 
         do {
-            System.out.println("\n1. Multiplication");
-            System.out.println("2. Line Multiplication");
-            System.out.println("3. Block Multiplication");
+            System.out.println("\n1. Multiplication (double[][])");
+            System.out.println("2. Line Multiplication (double[][])");
+            System.out.println("3. Block Multiplication (double[][])");
+            System.out.println("4. Parallel Multiplication (double[][], ForkJoinPool)");
+            System.out.println("5. Parallel Line Multiplication (double[][], ForkJoinPool)");
+            System.out.println("6. Parallel Block Multiplication (double[][], ForkJoinPool)");
+            System.out.println("7. Multiplication (flat double[])");
+            System.out.println("8. Line Multiplication (flat double[])");
+            System.out.println("9. Block Multiplication (flat double[])");
+            System.out.println("10. Line Multiplication (Vector API SIMD)");
+            System.out.println("11. Packed Multiplication (Gemm, flat double[], register-blocked micro-kernel)");
+            System.out.println("12. Re-tune Block Size");
+            System.out.println("13. Recursive Multiplication (cache-oblivious)");
+            System.out.println("14. Strassen-Winograd Multiplication");
+            System.out.println("15. Off-heap Multiplication (MemorySegment, needs --enable-preview)");
+            System.out.println("16. Out-of-core Block Multiplication (memory-mapped files)");
+            System.out.println("17. Sparse (CSR) vs Dense Line Multiplication");
+            System.out.println("18. Distributed Multiplication (local worker processes over TCP)");
+            System.out.println("19. Batched Small-Matrix Multiplication");
+            System.out.println("20. Block Multiplication, Tiles on Platform / ForkJoin / Virtual Threads");
+            System.out.println("21. Matrix Chain Multiplication (optimal parenthesization)");
+            System.out.println("22. Mixed-precision and Compensated Accumulation (float / double / Kahan / pairwise)");
+            System.out.println("23. Parallel Multiplication (Gemm, flat double[], row workers)");
+            System.out.println("24. Parallel Line Multiplication (Gemm, flat double[], row workers)");
+            System.out.println("25. Parallel Block Multiplication (Gemm, flat double[], row workers)");
             System.out.print("Selection?: ");
 
             while (!scanner.hasNextInt()) {
-                System.out.println("Invalid input. Please enter a number (1, 2, or 3).");
+                System.out.println("Invalid input. Please enter a number (1 to 25).");
                 scanner.next(); 
                 System.out.print("Selection?: ");
             }
@@ -190,6 +964,22 @@ public class MatrixMultiplication {
                 break;
             }
 
+            if (op == 12) {
+                BlockAutotuner.save(BlockAutotuner.tune());
+                continue;
+            }
+
+            if (op == 21) {
+                int count = readPositive(scanner, "Number of matrices? ", "number of matrices");
+                int[] dims = new int[count + 1];
+                System.out.print("Dimensions? (" + (count + 1) + " values, matrix i is d[i-1] x d[i]): ");
+                for (int i = 0; i <= count; i++) {
+                    dims[i] = readPositive(scanner, "", "dimension");
+                }
+                OnMultChain(dims, readThreads(scanner));
+                continue;
+            }
+
             System.out.print("Enter minimum matrix dimension (e.g. 100 for a 100x100 matrix): ");
             while (!scanner.hasNextInt()) {
                 System.out.println("Invalid input. Please enter an integer for dimensions.");
@@ -214,36 +1004,271 @@ public class MatrixMultiplication {
             }
             inc = scanner.nextInt();
 
+            // The dimension range sweeps the columns of B; rows of A and the
+            // inner dimension follow it unless fixed here, so tall-skinny
+            // (rows large, inner small) and short-wide shapes can be swept too.
+            rows = 0;
+            depth = 0;
+            if (op != 17 && op != 19) {
+                rows = readShapeDimension(scanner, "Rows of A?");
+                depth = readShapeDimension(scanner, "Inner dimension?");
+            }
+
             switch (op) {
                 case 1:
                     for (int n = n_min; n <= n_max; n += inc) {
-                        System.out.println("\nDimensions: " + n + "*" + n);
-                        lin = n;
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
                         col = n;
-                        OnMult(lin, col);
+                        printDimensions(lin, inner, col);
+                        OnMult(lin, inner, col);
                     }
                     break;
                 case 2:
                     for (int n = n_min; n <= n_max; n += inc) {
-                        System.out.println("\nDimensions: " + n + "*" + n);
-                        lin = n;
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
                         col = n;
-                        OnMultLine(lin, col);
+                        printDimensions(lin, inner, col);
+                        OnMultLine(lin, inner, col);
                     }
                     break;
                 case 3:
-                    System.out.print("Block Size?: ");
+                    System.out.print("Block Size? (0 = autotune): ");
                     while (!scanner.hasNextInt()) {
                         System.out.println("Invalid input. Please enter an integer for block size.");
                         scanner.next(); 
-                        System.out.print("Block Size?: ");
+                        System.out.print("Block Size? (0 = autotune): ");
                     }
                     blockSize = scanner.nextInt();
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        if (blockSize > 0) {
+                            OnMultBlock(lin, inner, col, blockSize);
+                        } else {
+                            OnMultBlockTuned(lin, inner, col);
+                        }
+                    }
+                    break;
+                case 4:
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultParallel(lin, inner, col, threads);
+                    }
+                    break;
+                case 5:
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultLineParallel(lin, inner, col, threads);
+                    }
+                    break;
+                case 6:
+                    blockSize = readPositive(scanner, "Block Size?: ", "block size");
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultBlockParallel(lin, inner, col, blockSize, threads);
+                    }
+                    break;
+                case 7:
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultFlat(lin, inner, col);
+                    }
+                    break;
+                case 8:
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultLineFlat(lin, inner, col);
+                    }
+                    break;
+                case 9:
+                    blockSize = readPositive(scanner, "Block Size?: ", "block size");
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultBlockFlat(lin, inner, col, blockSize);
+                    }
+                    break;
+                case 10:
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultLineVector(lin, inner, col);
+                    }
+                    break;
+                case 11:
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultPacked(lin, inner, col);
+                    }
+                    break;
+                case 13:
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultRecursive(lin, inner, col, threads);
+                    }
+                    break;
+                case 14:
+                    int crossover = readPositive(scanner, "Crossover Size?: ", "crossover size");
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultStrassen(lin, inner, col, crossover);
+                    }
+                    break;
+                case 15:
+                    int kernel = readPositive(scanner, "Kernel? (1 = naive, 2 = line, 3 = block): ", "kernel");
+                    while (kernel > 3) {
+                        System.out.println("Invalid input. Please enter 1, 2 or 3.");
+                        kernel = readPositive(scanner, "Kernel? (1 = naive, 2 = line, 3 = block): ", "kernel");
+                    }
+                    blockSize = kernel == 3 ? readPositive(scanner, "Block Size?: ", "block size") : 0;
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultOffHeap(lin, inner, col, kernel, blockSize, threads);
+                    }
+                    break;
+                case 16:
+                    blockSize = readPositive(scanner, "Block Size?: ", "block size");
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultOutOfCore(lin, inner, col, blockSize);
+                    }
+                    break;
+                case 17:
+                    threads = readThreads(scanner);
+                    double[] densities = {0.001, 0.005, 0.01, 0.02, 0.05, 0.1, 0.2};
                     for (int n = n_min; n <= n_max; n += inc) {
                         System.out.println("\nDimensions: " + n + "*" + n);
-                        lin = n;
+                        OnMultSparse(n, densities, threads);
+                    }
+                    break;
+                case 18:
+                    int workerCount = readPositive(scanner, "Workers? ", "worker count");
+                    int layoutChoice = readPositive(scanner, "Layout? (1 = block rows, 2 = SUMMA grid): ", "layout");
+                    while (layoutChoice > 2) {
+                        System.out.println("Invalid input. Please enter 1 or 2.");
+                        layoutChoice = readPositive(scanner, "Layout? (1 = block rows, 2 = SUMMA grid): ", "layout");
+                    }
+                    DistributedGemm.Layout layout = layoutChoice == 2 ? DistributedGemm.Layout.SUMMA_GRID : DistributedGemm.Layout.BLOCK_ROWS;
+                    int panel = 0;
+                    if (layout == DistributedGemm.Layout.SUMMA_GRID) {
+                        panel = readPositive(scanner, "Panel width? ", "panel width");
+                    }
+                    try (DistributedGemm.LocalCluster cluster = DistributedGemm.launchLocal(workerCount)) {
+                        for (int n = n_min; n <= n_max; n += inc) {
+                            lin = rows > 0 ? rows : n;
+                            inner = depth > 0 ? depth : n;
+                            col = n;
+                            printDimensions(lin, inner, col);
+                            OnMultDistributed(lin, inner, col, cluster.workers, layout, panel);
+                        }
+                    } catch (IOException e) {
+                        System.out.println("Could not start workers: " + e.getMessage());
+                    }
+                    break;
+                case 19:
+                    int count = readPositive(scanner, "Batch count? ", "batch count");
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        System.out.println("\nDimensions: " + count + " x " + n + "*" + n);
+                        OnMultBatched(n, count, threads);
+                    }
+                    break;
+                case 20:
+                    blockSize = readPositive(scanner, "Block Size?: ", "block size");
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        for (TileScheduler.Kind kind : TileScheduler.Kind.values()) {
+                            System.out.println(kind + ":");
+                            OnMultBlockScheduled(lin, inner, col, blockSize, kind, threads);
+                        }
+                    }
+                    break;
+                case 22:
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
                         col = n;
-                        OnMultBlock(lin, col, blockSize);
+                        printDimensions(lin, inner, col);
+                        OnMultAccumulation(lin, inner, col, threads);
+                    }
+                    break;
+                case 23:
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultGemmParallel(lin, inner, col, threads);
+                    }
+                    break;
+                case 24:
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultLineGemmParallel(lin, inner, col, threads);
+                    }
+                    break;
+                case 25:
+                    blockSize = readPositive(scanner, "Block Size?: ", "block size");
+                    threads = readThreads(scanner);
+                    for (int n = n_min; n <= n_max; n += inc) {
+                        lin = rows > 0 ? rows : n;
+                        inner = depth > 0 ? depth : n;
+                        col = n;
+                        printDimensions(lin, inner, col);
+                        OnMultBlockGemmParallel(lin, inner, col, blockSize, threads);
                     }
                     break;
                 default:
@@ -253,4 +1278,50 @@ public class MatrixMultiplication {
 
         scanner.close();
     }
+
+    private static int readShapeDimension(Scanner scanner, String prompt) {
+        System.out.print(prompt + " (0 = same as dimension): ");
+        while (!scanner.hasNextInt()) {
+            System.out.println("Invalid input. Please enter an integer for dimensions.");
+            scanner.next();
+            System.out.print(prompt + " (0 = same as dimension): ");
+        }
+        return scanner.nextInt();
+    }
+
+    private static void printDimensions(int m_ar, int m_ac, int m_br) {
+        if (m_ar == m_ac && m_ac == m_br) {
+            System.out.println("\nDimensions: " + m_ar + "*" + m_ar);
+        } else {
+            System.out.println("\nDimensions: " + m_ar + "*" + m_ac + " x " + m_ac + "*" + m_br);
+        }
+    }
+
+    // Re-prompts until the input is an integer >= 1.
+    private static int readPositive(Scanner scanner, String prompt, String what) {
+        while (true) {
+            System.out.print(prompt);
+            if (!scanner.hasNextInt()) {
+                System.out.println("Invalid input. Please enter an integer for " + what + ".");
+                scanner.next();
+                continue;
+            }
+            int value = scanner.nextInt();
+            if (value >= 1) {
+                return value;
+            }
+            System.out.println("Invalid input. The " + what + " must be at least 1.");
+        }
+    }
+
+    private static int readThreads(Scanner scanner) {
+        System.out.print("Threads? (0 = all cores): ");
+        while (!scanner.hasNextInt()) {
+            System.out.println("Invalid input. Please enter an integer for threads.");
+            scanner.next();
+            System.out.print("Threads? (0 = all cores): ");
+        }
+        int threads = scanner.nextInt();
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
 }
\ No newline at end of file
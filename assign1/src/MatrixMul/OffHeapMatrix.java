@@ -0,0 +1,114 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+// Row-major matrix stored outside the Java heap in a MemorySegment, so very
+// large sizes (three 10240 x 10240 matrices are ~2.4 GB) need neither a huge
+// -Xmx nor GC work. The segment is 64-byte aligned so rows start on a cache
+// line whenever cols is a multiple of 8. Memory comes from a shared Arena
+// (fork/join workers can read and write it) and is freed by close().
+//
+// Uses the FFM API, which is a preview API in Java 21: compile and run with
+// --enable-preview.
+public class OffHeapMatrix implements AutoCloseable {
+
+    static final long ALIGNMENT = 64;
+    static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+    final int rows;
+    final int cols;
+    final MemorySegment segment;
+    private final Arena arena;
+
+    public OffHeapMatrix(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.arena = Arena.ofShared();
+        this.segment = arena.allocate((long) rows * cols * Double.BYTES, ALIGNMENT);
+    }
+
+    public double get(int i, int j) {
+        return segment.getAtIndex(DOUBLE, (long) i * cols + j);
+    }
+
+    public void set(int i, int j, double value) {
+        segment.setAtIndex(DOUBLE, (long) i * cols + j, value);
+    }
+
+    public void fill(double value) {
+        if (value == 0.0) {
+            segment.fill((byte) 0);
+            return;
+        }
+        long size = (long) rows * cols;
+        for (long idx = 0; idx < size; idx++) {
+            segment.setAtIndex(DOUBLE, idx, value);
+        }
+    }
+
+    public void fillRow(int i, double value) {
+        long base = (long) i * cols;
+        for (int j = 0; j < cols; j++) {
+            segment.setAtIndex(DOUBLE, base + j, value);
+        }
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // Row-range kernels over off-heap storage. Naive and line keep the loop
+    // orders of the double[][] kernels; the block kernel runs ikj inside each
+    // tile so its inner loop is unit stride over phb and phc.
+    static void multRows(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int m_ar, int m_br, int rowStart, int rowEnd) {
+        MemorySegment pha = a.segment, phb = b.segment, phc = c.segment;
+        for (int i = rowStart; i < rowEnd; i++) {
+            long rowA = (long) i * m_ar;
+            for (int j = 0; j < m_br; j++) {
+                double temp = 0;
+                for (int k = 0; k < m_ar; k++) {
+                    temp += pha.getAtIndex(DOUBLE, rowA + k) * phb.getAtIndex(DOUBLE, (long) k * m_br + j);
+                }
+                phc.setAtIndex(DOUBLE, (long) i * m_br + j, temp);
+            }
+        }
+    }
+
+    static void multLineRows(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int m_ar, int m_br, int rowStart, int rowEnd) {
+        MemorySegment pha = a.segment, phb = b.segment, phc = c.segment;
+        for (int i = rowStart; i < rowEnd; i++) {
+            long rowC = (long) i * m_br;
+            for (int k = 0; k < m_ar; k++) {
+                double aik = pha.getAtIndex(DOUBLE, (long) i * m_ar + k);
+                long rowB = (long) k * m_br;
+                for (int j = 0; j < m_br; j++) {
+                    phc.setAtIndex(DOUBLE, rowC + j, phc.getAtIndex(DOUBLE, rowC + j) + aik * phb.getAtIndex(DOUBLE, rowB + j));
+                }
+            }
+        }
+    }
+
+    static void multBlockRows(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix c, int m_ar, int m_br, int bkSize, int rowStart, int rowEnd) {
+        MemorySegment pha = a.segment, phb = b.segment, phc = c.segment;
+        for (int bi = rowStart; bi < rowEnd; bi += bkSize) {
+            int iEnd = Math.min(bi + bkSize, rowEnd);
+            for (int bj = 0; bj < m_br; bj += bkSize) {
+                int jEnd = Math.min(bj + bkSize, m_br);
+                for (int bk = 0; bk < m_ar; bk += bkSize) {
+                    int kEnd = Math.min(bk + bkSize, m_ar);
+                    for (int i = bi; i < iEnd; i++) {
+                        long rowC = (long) i * m_br;
+                        for (int k = bk; k < kEnd; k++) {
+                            double aik = pha.getAtIndex(DOUBLE, (long) i * m_ar + k);
+                            long rowB = (long) k * m_br;
+                            for (int j = bj; j < jEnd; j++) {
+                                phc.setAtIndex(DOUBLE, rowC + j, phc.getAtIndex(DOUBLE, rowC + j) + aik * phb.getAtIndex(DOUBLE, rowB + j));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
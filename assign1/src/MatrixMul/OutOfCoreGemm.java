@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Out-of-core multiplication: A, B and C live in memory-mapped files and are
+// multiplied tile by tile with the bi/bj/bk loop structure of OnMultBlock.
+//
+// Each file stores its matrix as T x T tiles (edge tiles zero-padded to full
+// size), every tile row-major. A and C keep a tile row (bi, *) contiguous and
+// B keeps a tile column (*, bj) contiguous, so the A band for one bi and the
+// B band for one bj are each a single mapping. Only those two bands, one heap
+// copy of the current A and B tiles and the C tile accumulator are touched at
+// a time; everything else can be evicted by the OS, so the matrices can be
+// larger than physical RAM.
+//
+// A mapping is never unmapped explicitly: it stays valid until its buffer is
+// garbage collected, even after the channel is closed. multiply() drops each
+// band's buffer when it moves to the next band. get() keeps the band it last
+// mapped and reuses it while reads stay in that band, so reading a row or a
+// tile costs one mapping rather than one per element. close() drops that
+// buffer. All mappings of a file share the page cache, so get() sees what
+// multiply() and fill() wrote.
+public class OutOfCoreGemm {
+
+    // Which tile sequence is contiguous in the file.
+    enum TileOrder { ROW_BANDS, COLUMN_BANDS }
+
+    static class MappedMatrix implements AutoCloseable {
+        final int rows, cols, tile, tileRows, tileCols;
+        final TileOrder order;
+        final Path path;
+        final FileChannel channel;
+        // band last mapped by get(), -1 for none
+        private int readBand = -1;
+        private DoubleBuffer readMapping;
+
+        MappedMatrix(Path dir, String name, int rows, int cols, int tile, TileOrder order) throws IOException {
+            if (tile < 1) {
+                throw new IllegalArgumentException("Tile size must be at least 1, got " + tile);
+            }
+            this.rows = rows;
+            this.cols = cols;
+            this.tile = tile;
+            this.tileRows = (rows + tile - 1) / tile;
+            this.tileCols = (cols + tile - 1) / tile;
+            this.order = order;
+            this.path = Files.createTempFile(dir, name, ".mat");
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            long bandBytes = (long) tile * tile * (order == TileOrder.ROW_BANDS ? tileCols : tileRows) * Double.BYTES;
+            if (bandBytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Tile band of " + bandBytes + " bytes exceeds the 2 GB mapping limit; use a smaller tile");
+            }
+        }
+
+        int tileSize() {
+            return tile * tile;
+        }
+
+        int bandLength() {
+            return order == TileOrder.ROW_BANDS ? tileCols : tileRows;
+        }
+
+        // Maps band b (tile row b for ROW_BANDS, tile column b for COLUMN_BANDS).
+        DoubleBuffer mapBand(int band, FileChannel.MapMode mode) throws IOException {
+            long bytes = (long) tileSize() * bandLength() * Double.BYTES;
+            MappedByteBuffer buffer = channel.map(mode, band * bytes, bytes);
+            return buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+
+        // Position of tile (ti, tj) inside its band, in doubles.
+        int offsetInBand(int ti, int tj) {
+            return (order == TileOrder.ROW_BANDS ? tj : ti) * tileSize();
+        }
+
+        double get(int i, int j) throws IOException {
+            int ti = i / tile, tj = j / tile;
+            int band = order == TileOrder.ROW_BANDS ? ti : tj;
+            if (band != readBand) {
+                readMapping = mapBand(band, FileChannel.MapMode.READ_ONLY);
+                readBand = band;
+            }
+            return readMapping.get(offsetInBand(ti, tj) + (i % tile) * tile + j % tile);
+        }
+
+        // Writes every element through f(i, j), band by band; padding stays 0.
+        void fill(ElementFunction f) throws IOException {
+            double[] buffer = new double[tileSize()];
+            int bands = order == TileOrder.ROW_BANDS ? tileRows : tileCols;
+            for (int band = 0; band < bands; band++) {
+                DoubleBuffer mapped = mapBand(band, FileChannel.MapMode.READ_WRITE);
+                for (int t = 0; t < bandLength(); t++) {
+                    int ti = order == TileOrder.ROW_BANDS ? band : t;
+                    int tj = order == TileOrder.ROW_BANDS ? t : band;
+                    Arrays.fill(buffer, 0.0);
+                    for (int i = 0; i < tile && ti * tile + i < rows; i++) {
+                        for (int j = 0; j < tile && tj * tile + j < cols; j++) {
+                            buffer[i * tile + j] = f.at(ti * tile + i, tj * tile + j);
+                        }
+                    }
+                    mapped.put(offsetInBand(ti, tj), buffer);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            readMapping = null;
+            readBand = -1;
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    interface ElementFunction {
+        double at(int i, int j);
+    }
+
+    // Where the time of one multiply went and how many bytes crossed the
+    // mapped-file / heap boundary.
+    static class Stats {
+        long computeNanos;
+        long ioNanos;
+        long bytesMoved;
+    }
+
+    // C = A * B, with A and C in ROW_BANDS order and B in COLUMN_BANDS order.
+    static Stats multiply(MappedMatrix a, MappedMatrix b, MappedMatrix c) throws IOException {
+        int t = a.tile;
+        double[] aTile = new double[t * t];
+        double[] bTile = new double[t * t];
+        double[] cTile = new double[t * t];
+        Stats stats = new Stats();
+
+        for (int bi = 0; bi < c.tileRows; bi++) {
+            long io = System.nanoTime();
+            DoubleBuffer aBand = a.mapBand(bi, FileChannel.MapMode.READ_ONLY);
+            DoubleBuffer cBand = c.mapBand(bi, FileChannel.MapMode.READ_WRITE);
+            stats.ioNanos += System.nanoTime() - io;
+
+            for (int bj = 0; bj < c.tileCols; bj++) {
+                io = System.nanoTime();
+                DoubleBuffer bBand = b.mapBand(bj, FileChannel.MapMode.READ_ONLY);
+                stats.ioNanos += System.nanoTime() - io;
+                Arrays.fill(cTile, 0.0);
+
+                for (int bk = 0; bk < a.tileCols; bk++) {
+                    io = System.nanoTime();
+                    aBand.get(a.offsetInBand(bi, bk), aTile);
+                    bBand.get(b.offsetInBand(bk, bj), bTile);
+                    stats.ioNanos += System.nanoTime() - io;
+                    stats.bytesMoved += 2L * t * t * Double.BYTES;
+
+                    long compute = System.nanoTime();
+                    for (int i = 0; i < t; i++) {
+                        int rowC = i * t;
+                        for (int k = 0; k < t; k++) {
+                            double aik = aTile[i * t + k];
+                            int rowB = k * t;
+                            for (int j = 0; j < t; j++) {
+                                cTile[rowC + j] += aik * bTile[rowB + j];
+                            }
+                        }
+                    }
+                    stats.computeNanos += System.nanoTime() - compute;
+                }
+
+                io = System.nanoTime();
+                cBand.put(c.offsetInBand(bi, bj), cTile);
+                stats.ioNanos += System.nanoTime() - io;
+                stats.bytesMoved += (long) t * t * Double.BYTES;
+            }
+        }
+        return stats;
+    }
+}
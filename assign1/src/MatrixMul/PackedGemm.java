@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+// GotoBLAS-style GEMM: C += A * B over FlatMatrix storage.
+//
+// The loops are tiled three ways. B is copied panel by panel (KC x NC) into a
+// contiguous buffer sized to stay in L2/L3, A is copied block by block
+// (MC x KC) into a buffer sized for L2, and both copies are laid out in the
+// exact order the micro-kernel reads them: A in MR-tall slivers, B in NR-wide
+// slivers, each zero-padded at the edges. The micro-kernel then computes an
+// MR x NR tile of C in local variables with unit-stride loads only, so the
+// innermost loop has no bounds arithmetic and no strided access to B.
+public class PackedGemm {
+
+    static final int MR = 4;
+    static final int NR = 8;
+    static final int KC = 256;
+    static final int MC = 128;
+    static final int NC = 2048;
+
+    // Pack buffer sizes that fit any m and n.
+    static final int A_PACK_SIZE = MC * KC;
+    static final int B_PACK_SIZE = KC * NC;
+
+    public static void multiply(FlatMatrix a, FlatMatrix b, FlatMatrix c) {
+        multiply(a.rows, b.cols, a.cols, a.data, 0, a.cols, b.data, 0, b.cols, c.data, 0, c.cols);
+    }
+
+    // C += A * B on sub-matrices of row-major arrays: A is m x k starting at
+    // aOff with row stride lda, B is k x n at bOff/ldb, C is m x n at cOff/ldc.
+    public static void multiply(int m, int n, int k,
+                                double[] a, int aOff, int lda,
+                                double[] b, int bOff, int ldb,
+                                double[] c, int cOff, int ldc) {
+        double[] aPack = new double[roundUp(Math.min(MC, m), MR) * KC];
+        double[] bPack = new double[KC * roundUp(Math.min(NC, n), NR)];
+        double[] edge = new double[MR * NR];
+        multiply(m, n, k, 1.0, a, aOff, lda, 1, b, bOff, ldb, 1, c, cOff, ldc, aPack, bPack, edge);
+    }
+
+    // C += alpha * A * B with element (i, p) of A at aOff + i * ars + p * acs
+    // and (p, j) of B at bOff + p * brs + j * bcs, so either operand may be
+    // stored transposed; alpha is folded into the packed A. The pack buffers
+    // are the caller's (A_PACK_SIZE, B_PACK_SIZE and MR * NR doubles always
+    // suffice), so repeated calls allocate nothing.
+    static void multiply(int m, int n, int k, double alpha,
+                         double[] a, int aOff, int ars, int acs,
+                         double[] b, int bOff, int brs, int bcs,
+                         double[] c, int cOff, int ldc,
+                         double[] aPack, double[] bPack, double[] edge) {
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, bOff, brs, bcs, pc, jc, kc, nc, bPack);
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    packA(a, aOff, ars, acs, alpha, ic, pc, mc, kc, aPack);
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            int cOffset = cOff + (ic + ir) * ldc + jc + jr;
+                            if (mr == MR && nr == NR) {
+                                microKernel(kc, aPack, ir * kc, bPack, jr * kc, c, cOffset, ldc);
+                            } else {
+                                Arrays.fill(edge, 0.0);
+                                microKernel(kc, aPack, ir * kc, bPack, jr * kc, edge, 0, NR);
+                                for (int i = 0; i < mr; i++) {
+                                    for (int j = 0; j < nr; j++) {
+                                        c[cOffset + i * ldc + j] += edge[i * NR + j];
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    // Copies alpha * A[ic:ic+mc, pc:pc+kc] into MR-row slivers: sliver s
+    // holds, for each p, the MR values A[ic+s*MR .. ic+s*MR+MR-1][pc+p].
+    static void packA(double[] a, int aOff, int ars, int acs, double alpha, int ic, int pc, int mc, int kc, double[] aPack) {
+        int dst = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            for (int p = 0; p < kc; p++) {
+                int src = aOff + (ic + ir) * ars + (pc + p) * acs;
+                for (int i = 0; i < mr; i++) {
+                    aPack[dst++] = alpha * a[src + i * ars];
+                }
+                for (int i = mr; i < MR; i++) {
+                    aPack[dst++] = 0.0;
+                }
+            }
+        }
+    }
+
+    // Copies B[pc:pc+kc, jc:jc+nc] into NR-column slivers: sliver s holds, for
+    // each p, the NR values B[pc+p][jc+s*NR .. jc+s*NR+NR-1].
+    static void packB(double[] b, int bOff, int brs, int bcs, int pc, int jc, int kc, int nc, double[] bPack) {
+        int dst = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; p++) {
+                int src = bOff + (pc + p) * brs + (jc + jr) * bcs;
+                if (bcs == 1) {
+                    System.arraycopy(b, src, bPack, dst, nr);
+                } else {
+                    for (int j = 0; j < nr; j++) {
+                        bPack[dst + j] = b[src + j * bcs];
+                    }
+                }
+                for (int j = nr; j < NR; j++) {
+                    bPack[dst + j] = 0.0;
+                }
+                dst += NR;
+            }
+        }
+    }
+
+    // C[0:MR, 0:NR] (row stride ldc, starting at cOffset) += Apanel * Bpanel.
+    static void microKernel(int kc, double[] aPack, int aOffset, double[] bPack, int bOffset, double[] c, int cOffset, int ldc) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0, c04 = 0, c05 = 0, c06 = 0, c07 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0, c14 = 0, c15 = 0, c16 = 0, c17 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0, c24 = 0, c25 = 0, c26 = 0, c27 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0, c34 = 0, c35 = 0, c36 = 0, c37 = 0;
+
+        int ap = aOffset, bp = bOffset;
+        for (int p = 0; p < kc; p++, ap += MR, bp += NR) {
+            double a0 = aPack[ap], a1 = aPack[ap + 1], a2 = aPack[ap + 2], a3 = aPack[ap + 3];
+            double b0 = bPack[bp], b1 = bPack[bp + 1], b2 = bPack[bp + 2], b3 = bPack[bp + 3];
+            double b4 = bPack[bp + 4], b5 = bPack[bp + 5], b6 = bPack[bp + 6], b7 = bPack[bp + 7];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c04 += a0 * b4; c05 += a0 * b5; c06 += a0 * b6; c07 += a0 * b7;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c14 += a1 * b4; c15 += a1 * b5; c16 += a1 * b6; c17 += a1 * b7;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c24 += a2 * b4; c25 += a2 * b5; c26 += a2 * b6; c27 += a2 * b7;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+            c34 += a3 * b4; c35 += a3 * b5; c36 += a3 * b6; c37 += a3 * b7;
+        }
+
+        int r = cOffset;
+        c[r] += c00; c[r + 1] += c01; c[r + 2] += c02; c[r + 3] += c03;
+        c[r + 4] += c04; c[r + 5] += c05; c[r + 6] += c06; c[r + 7] += c07;
+        r += ldc;
+        c[r] += c10; c[r + 1] += c11; c[r + 2] += c12; c[r + 3] += c13;
+        c[r + 4] += c14; c[r + 5] += c15; c[r + 6] += c16; c[r + 7] += c17;
+        r += ldc;
+        c[r] += c20; c[r + 1] += c21; c[r + 2] += c22; c[r + 3] += c23;
+        c[r + 4] += c24; c[r + 5] += c25; c[r + 6] += c26; c[r + 7] += c27;
+        r += ldc;
+        c[r] += c30; c[r + 1] += c31; c[r + 2] += c32; c[r + 3] += c33;
+        c[r + 4] += c34; c[r + 5] += c35; c[r + 6] += c36; c[r + 7] += c37;
+    }
+}
@@ -0,0 +1,163 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+// Hardware counters through the Linux perf_event_open syscall, called with
+// the FFM API (preview in Java 21: run with --enable-preview). This is the
+// Java-side stand-in for the PAPI event set in matrixproduct.cpp: L1 data
+// cache read misses, last-level cache read misses and retired instructions.
+//
+// Counters follow the opening thread and, via inherit, threads it creates
+// afterwards; a child's counts reach the opener's fds only when the child
+// exits. That covers per-call pools that are shut down and awaited inside
+// the measured run (MatrixMultiplication.runParallel), but not workers that
+// were started earlier or outlive it. User space only, so
+// perf_event_paranoid <= 2 is enough; add --enable-native-access=ALL-UNNAMED
+// to silence the restricted-method warning. open() returns null when the syscall,
+// the architecture or the PMU is not available (e.g. most VMs).
+public class PerfCounters implements AutoCloseable {
+
+    static final String[] NAMES = {"L1 DCM", "LLC DCM", "TOT INS"};
+
+    private static final int PERF_TYPE_HARDWARE = 0;
+    private static final int PERF_TYPE_HW_CACHE = 3;
+    private static final long PERF_COUNT_HW_INSTRUCTIONS = 1;
+    // cache id | (op READ = 0) << 8 | (result MISS = 1) << 16
+    private static final long HW_CACHE_L1D_READ_MISS = 0 | (0 << 8) | (1 << 16);
+    private static final long HW_CACHE_LL_READ_MISS = 2 | (0 << 8) | (1 << 16);
+
+    private static final long PERF_EVENT_IOC_ENABLE = 0x2400;
+    private static final long PERF_EVENT_IOC_DISABLE = 0x2401;
+    private static final long PERF_EVENT_IOC_RESET = 0x2403;
+
+    private static final int ATTR_SIZE = 128;
+    // flags bitfield: disabled (bit 0), inherit (bit 1), exclude_kernel (bit 5), exclude_hv (bit 6)
+    private static final long ATTR_FLAGS = 1L | (1L << 1) | (1L << 5) | (1L << 6);
+
+    private static MethodHandle syscall, ioctl, read, close;
+
+    private final int[] fds;
+    private final Arena arena = Arena.ofConfined();
+    private final MemorySegment value = arena.allocate(ValueLayout.JAVA_LONG);
+
+    private PerfCounters(int[] fds) {
+        this.fds = fds;
+    }
+
+    public static PerfCounters open() {
+        long nr = syscallNumber();
+        if (nr < 0 || !System.getProperty("os.name").equals("Linux")) {
+            return null;
+        }
+        try {
+            bind();
+            int[] fds = new int[3];
+            try (Arena attrArena = Arena.ofConfined()) {
+                fds[0] = openEvent(attrArena, nr, PERF_TYPE_HW_CACHE, HW_CACHE_L1D_READ_MISS);
+                fds[1] = openEvent(attrArena, nr, PERF_TYPE_HW_CACHE, HW_CACHE_LL_READ_MISS);
+                fds[2] = openEvent(attrArena, nr, PERF_TYPE_HARDWARE, PERF_COUNT_HW_INSTRUCTIONS);
+            }
+            for (int i = 0; i < fds.length; i++) {
+                if (fds[i] < 0) {
+                    for (int j = 0; j < fds.length; j++) {
+                        if (fds[j] >= 0) {
+                            int ignored = (int) close.invokeExact(fds[j]);
+                        }
+                    }
+                    return null;
+                }
+            }
+            return new PerfCounters(fds);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        for (int fd : fds) {
+            ioctl(fd, PERF_EVENT_IOC_RESET);
+            ioctl(fd, PERF_EVENT_IOC_ENABLE);
+        }
+    }
+
+    // Stops counting and returns the values in NAMES order.
+    public long[] stop() {
+        long[] values = new long[fds.length];
+        for (int i = 0; i < fds.length; i++) {
+            ioctl(fds[i], PERF_EVENT_IOC_DISABLE);
+            try {
+                long n = (long) read.invokeExact(fds[i], value, 8L);
+                values[i] = n == 8 ? value.get(ValueLayout.JAVA_LONG, 0) : -1;
+            } catch (Throwable e) {
+                values[i] = -1;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void close() {
+        for (int fd : fds) {
+            try {
+                int ignored = (int) close.invokeExact(fd);
+            } catch (Throwable e) {
+                // nothing left to release
+            }
+        }
+        arena.close();
+    }
+
+    private static long syscallNumber() {
+        switch (System.getProperty("os.arch")) {
+            case "amd64":
+            case "x86_64":
+                return 298;
+            case "aarch64":
+                return 241;
+            default:
+                return -1;
+        }
+    }
+
+    private static synchronized void bind() {
+        if (syscall != null) {
+            return;
+        }
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        syscall = linker.downcallHandle(libc.find("syscall").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG),
+                Linker.Option.firstVariadicArg(1));
+        ioctl = linker.downcallHandle(libc.find("ioctl").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT),
+                Linker.Option.firstVariadicArg(2));
+        read = linker.downcallHandle(libc.find("read").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+        close = linker.downcallHandle(libc.find("close").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    }
+
+    // perf_event_open(&attr, pid = 0 (this thread), cpu = -1 (any), group_fd = -1, flags = 0)
+    private static int openEvent(Arena arena, long nr, int type, long config) throws Throwable {
+        MemorySegment attr = arena.allocate(ATTR_SIZE, 8);
+        attr.fill((byte) 0);
+        attr.set(ValueLayout.JAVA_INT, 0, type);
+        attr.set(ValueLayout.JAVA_INT, 4, ATTR_SIZE);
+        attr.set(ValueLayout.JAVA_LONG, 8, config);
+        attr.set(ValueLayout.JAVA_LONG, 40, ATTR_FLAGS);
+        return (int) (long) syscall.invokeExact(nr, attr, 0L, -1L, -1L, 0L);
+    }
+
+    private static void ioctl(int fd, long request) {
+        try {
+            int ignored = (int) ioctl.invokeExact(fd, request, 0);
+        } catch (Throwable e) {
+            // a failed ioctl leaves the counter unchanged; stop() reports what it reads
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+// A fixed set of platform threads with a static row partition, like OpenMP's
+// schedule(static): worker t always gets the same slice of rows (rounded to
+// multiples of align) for a given row count. Running the initialisation and
+// the kernel through the same RowWorkers therefore has each row written first
+// by the thread that later computes on it.
+//
+// That matters for first-touch NUMA placement: a page is placed on the node of
+// the thread that first writes it, and the Java heap pages behind a row array
+// are first written when the array is allocated and zeroed. Allocating each
+// row of a double[][] inside its owner thread (see allocateRows) puts it on
+// that thread's node; -XX:+UseNUMA makes the JVM keep per-node allocation
+// areas for this. A single flat double[] or an Arena segment is zeroed by the
+// allocating thread, so only double[][] storage can be placed this way.
+public class RowWorkers implements AutoCloseable {
+
+    interface RowFill {
+        void fill(double[] row, int i);
+    }
+
+    // A row kernel that is also told which worker's slice it is running, for
+    // callers that keep per-worker scratch buffers.
+    interface SliceKernel {
+        void compute(int worker, int rowStart, int rowEnd);
+    }
+
+    private final Thread[] workers;
+    private final CyclicBarrier start;
+    private final CyclicBarrier done;
+    private SliceKernel job;
+    private int rows, align;
+    private boolean closed;
+    private volatile Throwable failure;
+
+    public RowWorkers(int count) {
+        workers = new Thread[count];
+        start = new CyclicBarrier(count + 1);
+        done = new CyclicBarrier(count + 1);
+        for (int t = 0; t < count; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> work(index), "row-worker-" + t);
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+    }
+
+    public int size() {
+        return workers.length;
+    }
+
+    // First row of worker t's slice; worker t owns [sliceStart(t), sliceStart(t + 1)).
+    int sliceStart(int t, int rows, int align) {
+        int blocks = (rows + align - 1) / align;
+        return Math.min(rows, (int) ((long) blocks * t / workers.length) * align);
+    }
+
+    // Runs kernel over rows [0, rows) and returns when every slice is done.
+    public void run(MatrixMultiplication.RowKernel kernel, int rows, int align) {
+        runSlices((t, rowStart, rowEnd) -> kernel.compute(rowStart, rowEnd), rows, align);
+    }
+
+    public void runSlices(SliceKernel kernel, int rows, int align) {
+        this.job = kernel;
+        this.rows = rows;
+        this.align = align;
+        await(start);
+        await(done);
+        Throwable t = failure;
+        if (t != null) {
+            failure = null;
+            throw new RuntimeException("Row worker failed", t);
+        }
+    }
+
+    // Allocates a rows x cols matrix, each row allocated and filled by the
+    // worker that owns it under a static partition with the given align.
+    public double[][] allocateRows(int rows, int cols, int align, RowFill fill) {
+        double[][] matrix = new double[rows][];
+        run((rowStart, rowEnd) -> {
+            for (int i = rowStart; i < rowEnd; i++) {
+                double[] row = new double[cols];
+                fill.fill(row, i);
+                matrix[i] = row;
+            }
+        }, rows, align);
+        return matrix;
+    }
+
+    private void work(int t) {
+        while (true) {
+            try {
+                start.await();
+            } catch (InterruptedException | BrokenBarrierException e) {
+                return;
+            }
+            // fields written before the start barrier are visible here
+            if (closed) {
+                return;
+            }
+            try {
+                int rowStart = sliceStart(t, rows, align);
+                int rowEnd = sliceStart(t + 1, rows, align);
+                if (rowStart < rowEnd) {
+                    job.compute(t, rowStart, rowEnd);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+            try {
+                done.await();
+            } catch (InterruptedException | BrokenBarrierException e) {
+                return;
+            }
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for row workers", e);
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Row workers stopped", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        await(start);
+    }
+}
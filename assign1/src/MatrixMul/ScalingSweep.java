@@ -0,0 +1,80 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+// Thread-scaling sweep: runs parallel kernels at each thread count and reports
+// speedup, parallel efficiency and the Karp-Flatt serial fraction per size,
+// the same figures the report derives by hand for the OpenMP runs.
+//
+// For p threads with median time T(p):
+//   speedup     S = T(1) / T(p)
+//   efficiency  E = S / p
+//   Karp-Flatt  e = (1/S - 1/p) / (1 - 1/p)   (undefined at p = 1)
+// A Karp-Flatt fraction that grows with p points at parallel overhead rather
+// than a fixed serial part.
+//
+// Takes the MatrixBenchmark options; only *-par and *-static algorithms are
+// accepted, --threads defaults to 1:<cores> and 1 is always measured as the
+// baseline. --format is table or csv; json is rejected. CSV rows can be plotted with plots_scaling.py:
+//   java -cp classes ScalingSweep --algorithms=line-par,block-par --sizes=600:3000:400
+//        --threads=1:8 --format=csv --output=scaling.csv
+public class ScalingSweep {
+
+    public static void main(String[] args) throws Exception {
+        MatrixBenchmark.Params p = MatrixBenchmark.parse(args);
+        if (!p.format.equals("table") && !p.format.equals("csv")) {
+            throw new IllegalArgumentException("Unsupported format: " + p.format + ", ScalingSweep writes table or csv");
+        }
+        if (Arrays.stream(args).noneMatch(arg -> arg.startsWith("--threads="))) {
+            p.threads = IntStream.rangeClosed(1, Runtime.getRuntime().availableProcessors()).toArray();
+        }
+        int[] threadCounts = IntStream.concat(IntStream.of(1), Arrays.stream(p.threads)).distinct().sorted().toArray();
+        for (String algorithm : p.algorithms) {
+            if (!MatrixBenchmark.usesThreads(algorithm)) {
+                throw new IllegalArgumentException(algorithm + " does not take a thread count; use a *-par or *-static algorithm");
+            }
+        }
+
+        PrintStream out = p.output == null ? System.out : new PrintStream(p.output);
+        boolean csv = p.format.equals("csv");
+        try {
+            if (csv) {
+                out.println("algorithm,m,k,n,block,threads,median_ms,speedup,efficiency,karp_flatt");
+            } else {
+                out.printf("%-18s %14s %6s %7s %12s %8s %10s %10s%n",
+                        "Algorithm", "n", "block", "threads", "median (ms)", "speedup", "efficiency", "Karp-Flatt");
+            }
+            for (String algorithm : p.algorithms) {
+                int[] blocks = MatrixBenchmark.usesBlock(algorithm) ? p.blocks : new int[] {0};
+                for (MatrixBenchmark.Shape shape : p.shapes) {
+                    for (int bkSize : blocks) {
+                        double baseline = 0;
+                        for (int threads : threadCounts) {
+                            MatrixBenchmark.Result r = MatrixBenchmark.measurePoint(algorithm, shape, bkSize, threads, p);
+                            if (threads == 1) {
+                                baseline = r.medianMs;
+                            }
+                            double speedup = baseline / r.medianMs;
+                            double efficiency = speedup / threads;
+                            double karpFlatt = threads > 1 ? (1 / speedup - 1.0 / threads) / (1 - 1.0 / threads) : Double.NaN;
+                            if (csv) {
+                                out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%.3f,%.4f,%.4f,%s%n", algorithm, shape.m, shape.k, shape.n, bkSize, threads,
+                                        r.medianMs, speedup, efficiency, threads > 1 ? String.format(Locale.ROOT, "%.4f", karpFlatt) : "");
+                            } else {
+                                out.printf("%-18s %14s %6s %7d %12.3f %8.2f %10.2f %10s%n", algorithm, shape,
+                                        bkSize > 0 ? Integer.toString(bkSize) : "-", threads, r.medianMs, speedup, efficiency,
+                                        threads > 1 ? String.format("%.4f", karpFlatt) : "-");
+                            }
+                            out.flush();
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Compressed sparse row (CSR) and column (CSC) matrices of doubles.
+//
+// CSR keeps, for each row i, the column indices and values of its non-zeros
+// in index[ptr[i] .. ptr[i + 1]) and value[...]; CSC is the same with rows and
+// columns swapped. Both share this class and differ only in `byRows`.
+//
+// Multiplication uses Gustavson's row-by-row algorithm: row i of C is the sum
+// of the rows of B selected by the non-zeros of row i of A, accumulated in a
+// dense row buffer with a marker array that records which columns are
+// occupied, so work is proportional to the flops actually needed rather than
+// to n^3.
+public class SparseMatrix {
+
+    final int rows;
+    final int cols;
+    final boolean byRows;
+    final int[] ptr;
+    final int[] index;
+    final double[] value;
+
+    SparseMatrix(int rows, int cols, boolean byRows, int[] ptr, int[] index, double[] value) {
+        this.rows = rows;
+        this.cols = cols;
+        this.byRows = byRows;
+        this.ptr = ptr;
+        this.index = index;
+        this.value = value;
+    }
+
+    public int nonZeros() {
+        return ptr[byRows ? rows : cols];
+    }
+
+    // Random rows x cols CSR matrix where each entry is non-zero with the given
+    // probability; values are uniform in [0, 1).
+    public static SparseMatrix random(int rows, int cols, double density, long seed) {
+        Random random = new Random(seed);
+        int[] ptr = new int[rows + 1];
+        int capacity = (int) Math.min((long) rows * cols, (long) (rows * (double) cols * density * 1.1) + 16);
+        int[] index = new int[capacity];
+        double[] value = new double[capacity];
+        int nnz = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (random.nextDouble() < density) {
+                    if (nnz == index.length) {
+                        index = Arrays.copyOf(index, nnz * 2);
+                        value = Arrays.copyOf(value, nnz * 2);
+                    }
+                    index[nnz] = j;
+                    value[nnz] = random.nextDouble();
+                    nnz++;
+                }
+            }
+            ptr[i + 1] = nnz;
+        }
+        return new SparseMatrix(rows, cols, true, ptr, Arrays.copyOf(index, nnz), Arrays.copyOf(value, nnz));
+    }
+
+    public static SparseMatrix fromDense(FlatMatrix m) {
+        int[] ptr = new int[m.rows + 1];
+        int nnz = 0;
+        for (double v : m.data) {
+            if (v != 0.0) {
+                nnz++;
+            }
+        }
+        int[] index = new int[nnz];
+        double[] value = new double[nnz];
+        int p = 0;
+        for (int i = 0; i < m.rows; i++) {
+            for (int j = 0; j < m.cols; j++) {
+                double v = m.data[i * m.cols + j];
+                if (v != 0.0) {
+                    index[p] = j;
+                    value[p] = v;
+                    p++;
+                }
+            }
+            ptr[i + 1] = p;
+        }
+        return new SparseMatrix(m.rows, m.cols, true, ptr, index, value);
+    }
+
+    public FlatMatrix toDense() {
+        FlatMatrix m = new FlatMatrix(rows, cols);
+        int outer = byRows ? rows : cols;
+        for (int o = 0; o < outer; o++) {
+            for (int p = ptr[o]; p < ptr[o + 1]; p++) {
+                if (byRows) {
+                    m.data[o * cols + index[p]] = value[p];
+                } else {
+                    m.data[index[p] * cols + o] = value[p];
+                }
+            }
+        }
+        return m;
+    }
+
+    // Same matrix in the other layout (CSR <-> CSC), via a counting sort on
+    // the inner index.
+    public SparseMatrix convert() {
+        int outer = byRows ? rows : cols;
+        int inner = byRows ? cols : rows;
+        int nnz = nonZeros();
+        int[] newPtr = new int[inner + 1];
+        for (int p = 0; p < nnz; p++) {
+            newPtr[index[p] + 1]++;
+        }
+        for (int i = 0; i < inner; i++) {
+            newPtr[i + 1] += newPtr[i];
+        }
+        int[] next = Arrays.copyOf(newPtr, inner);
+        int[] newIndex = new int[nnz];
+        double[] newValue = new double[nnz];
+        for (int o = 0; o < outer; o++) {
+            for (int p = ptr[o]; p < ptr[o + 1]; p++) {
+                int dst = next[index[p]]++;
+                newIndex[dst] = o;
+                newValue[dst] = value[p];
+            }
+        }
+        return new SparseMatrix(rows, cols, !byRows, newPtr, newIndex, newValue);
+    }
+
+    // Element (i, j), by binary search in row i (CSR) or column j (CSC); the
+    // indices within a row or column are sorted.
+    public double get(int i, int j) {
+        int outer = byRows ? i : j, inner = byRows ? j : i;
+        int p = Arrays.binarySearch(index, ptr[outer], ptr[outer + 1], inner);
+        return p >= 0 ? value[p] : 0.0;
+    }
+
+    // y = this * x.
+    public void multiply(double[] x, double[] y) {
+        if (byRows) {
+            for (int i = 0; i < rows; i++) {
+                double sum = 0;
+                for (int p = ptr[i]; p < ptr[i + 1]; p++) {
+                    sum += value[p] * x[index[p]];
+                }
+                y[i] = sum;
+            }
+        } else {
+            Arrays.fill(y, 0, rows, 0.0);
+            for (int j = 0; j < cols; j++) {
+                double xj = x[j];
+                for (int p = ptr[j]; p < ptr[j + 1]; p++) {
+                    y[index[p]] += value[p] * xj;
+                }
+            }
+        }
+    }
+
+    // C = A * B for CSR A and B (Gustavson). A CSC operand is converted first;
+    // for CSC * CSC the product is computed as (B^T A^T)^T, which reads the
+    // CSC arrays as the CSR form of the transpose.
+    public static SparseMatrix multiply(SparseMatrix a, SparseMatrix b) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Shape mismatch: " + a.rows + "x" + a.cols + " * " + b.rows + "x" + b.cols);
+        }
+        if (!a.byRows && !b.byRows) {
+            SparseMatrix at = new SparseMatrix(a.cols, a.rows, true, a.ptr, a.index, a.value);
+            SparseMatrix bt = new SparseMatrix(b.cols, b.rows, true, b.ptr, b.index, b.value);
+            SparseMatrix ct = multiplyRows(bt, at, 0, bt.rows);
+            return new SparseMatrix(ct.cols, ct.rows, false, ct.ptr, ct.index, ct.value);
+        }
+        return multiplyRows(a.byRows ? a : a.convert(), b.byRows ? b : b.convert(), 0, a.rows);
+    }
+
+    // Rows [rowStart, rowEnd) of A * B for CSR A and B, as a CSR matrix with
+    // rowEnd - rowStart rows.
+    static SparseMatrix multiplyRows(SparseMatrix a, SparseMatrix b, int rowStart, int rowEnd) {
+        int n = b.cols;
+        double[] accumulator = new double[n];
+        int[] marker = new int[n];
+        Arrays.fill(marker, -1);
+        int[] occupied = new int[n];
+
+        int[] ptr = new int[rowEnd - rowStart + 1];
+        int[] index = new int[Math.max(16, a.ptr[rowEnd] - a.ptr[rowStart])];
+        double[] value = new double[index.length];
+        int nnz = 0;
+
+        for (int i = rowStart; i < rowEnd; i++) {
+            int count = 0;
+            for (int pa = a.ptr[i]; pa < a.ptr[i + 1]; pa++) {
+                int k = a.index[pa];
+                double aik = a.value[pa];
+                for (int pb = b.ptr[k]; pb < b.ptr[k + 1]; pb++) {
+                    int j = b.index[pb];
+                    if (marker[j] != i) {
+                        marker[j] = i;
+                        accumulator[j] = 0.0;
+                        occupied[count++] = j;
+                    }
+                    accumulator[j] += aik * b.value[pb];
+                }
+            }
+
+            if (nnz + count > index.length) {
+                int capacity = Math.max(nnz + count, index.length * 2);
+                index = Arrays.copyOf(index, capacity);
+                value = Arrays.copyOf(value, capacity);
+            }
+            Arrays.sort(occupied, 0, count);
+            for (int c = 0; c < count; c++) {
+                index[nnz] = occupied[c];
+                value[nnz] = accumulator[occupied[c]];
+                nnz++;
+            }
+            ptr[i - rowStart + 1] = nnz;
+        }
+        return new SparseMatrix(rowEnd - rowStart, n, true, ptr, Arrays.copyOf(index, nnz), Arrays.copyOf(value, nnz));
+    }
+
+    // Parallel Gustavson: rows of A are split into one contiguous slice per
+    // pool thread, balanced by non-zero count; each slice produces its own CSR
+    // block with private accumulators, and the blocks are concatenated. This
+    // overload starts and stops a pool of `threads` inside the call.
+    public static SparseMatrix multiplyParallel(SparseMatrix a, SparseMatrix b, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return multiplyParallel(a, b, pool);
+        } finally {
+            MatrixMultiplication.shutdownAndWait(pool);
+        }
+    }
+
+    public static SparseMatrix multiplyParallel(SparseMatrix a, SparseMatrix b, ForkJoinPool pool) {
+        int threads = pool.getParallelism();
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("Shape mismatch: " + a.rows + "x" + a.cols + " * " + b.rows + "x" + b.cols);
+        }
+        SparseMatrix csrA = a.byRows ? a : a.convert();
+        SparseMatrix csrB = b.byRows ? b : b.convert();
+
+        int[] bounds = new int[threads + 1];
+        long total = csrA.nonZeros();
+        for (int t = 1; t < threads; t++) {
+            long target = total * t / threads;
+            int row = bounds[t - 1];
+            while (row < csrA.rows && csrA.ptr[row] < target) {
+                row++;
+            }
+            bounds[t] = row;
+        }
+        bounds[threads] = csrA.rows;
+
+        SparseMatrix[] parts = new SparseMatrix[threads];
+        MatrixMultiplication.runParallel((sliceStart, sliceEnd) -> {
+            for (int t = sliceStart; t < sliceEnd; t++) {
+                parts[t] = multiplyRows(csrA, csrB, bounds[t], bounds[t + 1]);
+            }
+        }, threads, 1, pool);
+
+        int nnz = 0;
+        for (SparseMatrix part : parts) {
+            nnz += part.nonZeros();
+        }
+        int[] ptr = new int[csrA.rows + 1];
+        int[] index = new int[nnz];
+        double[] value = new double[nnz];
+        int row = 0, offset = 0;
+        for (SparseMatrix part : parts) {
+            for (int i = 0; i < part.rows; i++) {
+                ptr[row + i + 1] = offset + part.ptr[i + 1];
+            }
+            System.arraycopy(part.index, 0, index, offset, part.nonZeros());
+            System.arraycopy(part.value, 0, value, offset, part.nonZeros());
+            row += part.rows;
+            offset += part.nonZeros();
+        }
+        return new SparseMatrix(csrA.rows, csrB.cols, true, ptr, index, value);
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+// Strassen-Winograd multiplication (7 half-size products, 15 additions per
+// level) for square matrices in row-major double[] storage.
+//
+// Recursion stops once the half size is at or below the crossover, where
+// PackedGemm takes over. Each level owns two h x h scratch buffers (X and Y
+// below), allocated once per call, so the extra memory is bounded by about
+// 2/3 n^2 doubles whatever the depth. The leaves share one set of PackedGemm
+// pack buffers, also allocated once per call, so the 7^levels leaf products
+// allocate nothing. The operation schedule is the
+// two-temporary one of Boyer, Dumas, Pernet and Zhou ("Memory efficient
+// scheduling of Strassen-Winograd's matrix multiplication algorithm"),
+// which computes the products directly into the quadrants of C.
+//
+// Sizes that do not halve evenly down to the crossover are zero-padded once
+// at the top level.
+public class Strassen {
+
+    private final int crossover;
+    private final double[][] scratchX;
+    private final double[][] scratchY;
+    private final double[] aPack, bPack, edge;
+
+    private Strassen(int n, int crossover) {
+        this.crossover = crossover;
+        int levels = 0;
+        for (int h = n; h > crossover; h /= 2) {
+            levels++;
+        }
+        int leaf = n >> levels;
+        aPack = new double[PackedGemm.roundUp(Math.min(PackedGemm.MC, leaf), PackedGemm.MR) * PackedGemm.KC];
+        bPack = new double[PackedGemm.KC * PackedGemm.roundUp(Math.min(PackedGemm.NC, leaf), PackedGemm.NR)];
+        edge = new double[PackedGemm.MR * PackedGemm.NR];
+        scratchX = new double[levels][];
+        scratchY = new double[levels][];
+        int h = n;
+        for (int level = 0; level < levels; level++) {
+            h /= 2;
+            scratchX[level] = new double[h * h];
+            scratchY[level] = new double[h * h];
+        }
+    }
+
+    // Smallest size >= n that halves evenly until it is at most crossover.
+    static int paddedSize(int n, int crossover) {
+        if (crossover < 1) {
+            throw new IllegalArgumentException("Crossover must be at least 1, got " + crossover);
+        }
+        int levels = 0;
+        int h = n;
+        while (h > crossover) {
+            h = (h + 1) / 2;
+            levels++;
+        }
+        return h << levels;
+    }
+
+    // Normwise error constant of multiply() for the given operands (Higham,
+    // "Accuracy and Stability of Numerical Algorithms", 2nd ed., Thm 23.3 for
+    // Winograd's variant): with l levels down to leaf size n0 of the padded
+    // size, max|C - A * B| <= ((n0^2 + 6 n0) 18^l) u max|A| max|B|, to first
+    // order in u. Unlike the conventional kernels there is no componentwise
+    // bound, and the constant is a worst case, not a typical error.
+    static double normwiseErrorBound(int m, int k, int n, int crossover) {
+        int padded = paddedSize(Math.max(m, Math.max(k, n)), crossover);
+        int levels = 0;
+        for (int h = padded; h > crossover; h /= 2) {
+            levels++;
+        }
+        double n0 = padded >> levels;
+        return (n0 * n0 + 6 * n0) * Math.pow(18, levels) * Verifier.DOUBLE_ROUNDOFF;
+    }
+
+    // C = A * B. Rectangular operands are zero-padded to a square of the
+    // largest dimension, so tall-skinny and short-wide products pay for the
+    // full square; PackedGemm is the better choice for those.
+    public static void multiply(FlatMatrix a, FlatMatrix b, FlatMatrix c, int crossover) {
+        int m = a.rows, k = a.cols, n = b.cols;
+        int size = Math.max(m, Math.max(k, n));
+        int padded = paddedSize(size, crossover);
+        Strassen strassen = new Strassen(padded, crossover);
+        if (padded == m && padded == k && padded == n) {
+            strassen.multiply(n, a.data, 0, n, b.data, 0, n, c.data, 0, n, 0);
+            return;
+        }
+
+        double[] pa = new double[padded * padded];
+        double[] pb = new double[padded * padded];
+        double[] pc = new double[padded * padded];
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(a.data, i * k, pa, i * padded, k);
+        }
+        for (int i = 0; i < k; i++) {
+            System.arraycopy(b.data, i * n, pb, i * padded, n);
+        }
+        strassen.multiply(padded, pa, 0, padded, pb, 0, padded, pc, 0, padded, 0);
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(pc, i * padded, c.data, i * n, n);
+        }
+    }
+
+    // C = A * B, all n x n sub-matrices given as (array, offset, row stride).
+    private void multiply(int n, double[] a, int ao, int lda, double[] b, int bo, int ldb,
+                          double[] c, int co, int ldc, int level) {
+        if (n <= crossover) {
+            for (int i = 0; i < n; i++) {
+                Arrays.fill(c, co + i * ldc, co + i * ldc + n, 0.0);
+            }
+            PackedGemm.multiply(n, n, n, 1.0, a, ao, lda, 1, b, bo, ldb, 1, c, co, ldc, aPack, bPack, edge);
+            return;
+        }
+
+        int h = n / 2;
+        int a11 = ao, a12 = ao + h, a21 = ao + h * lda, a22 = a21 + h;
+        int b11 = bo, b12 = bo + h, b21 = bo + h * ldb, b22 = b21 + h;
+        int c11 = co, c12 = co + h, c21 = co + h * ldc, c22 = c21 + h;
+        double[] x = scratchX[level];
+        double[] y = scratchY[level];
+        int next = level + 1;
+
+        sub(h, a, a11, lda, a, a21, lda, x, 0, h);          // S3 = A11 - A21
+        sub(h, b, b22, ldb, b, b12, ldb, y, 0, h);          // T3 = B22 - B12
+        multiply(h, x, 0, h, y, 0, h, c, c21, ldc, next);   // P7 = S3 * T3     -> C21
+        add(h, a, a21, lda, a, a22, lda, x, 0, h);          // S1 = A21 + A22
+        sub(h, b, b12, ldb, b, b11, ldb, y, 0, h);          // T1 = B12 - B11
+        multiply(h, x, 0, h, y, 0, h, c, c22, ldc, next);   // P5 = S1 * T1     -> C22
+        sub(h, x, 0, h, a, a11, lda, x, 0, h);              // S2 = S1 - A11
+        sub(h, b, b22, ldb, y, 0, h, y, 0, h);              // T2 = B22 - T1
+        multiply(h, x, 0, h, y, 0, h, c, c12, ldc, next);   // P6 = S2 * T2     -> C12
+        sub(h, a, a12, lda, x, 0, h, x, 0, h);              // S4 = A12 - S2
+        multiply(h, x, 0, h, b, b22, ldb, c, c11, ldc, next); // P3 = S4 * B22  -> C11
+        multiply(h, a, a11, lda, b, b11, ldb, x, 0, h, next); // P1 = A11 * B11 -> X
+        add(h, x, 0, h, c, c12, ldc, c, c12, ldc);          // U2 = P1 + P6
+        add(h, c, c12, ldc, c, c21, ldc, c, c21, ldc);      // U3 = U2 + P7
+        add(h, c, c12, ldc, c, c22, ldc, c, c12, ldc);      // U4 = U2 + P5
+        add(h, c, c21, ldc, c, c22, ldc, c, c22, ldc);      // U7 = U3 + P5     (final C22)
+        add(h, c, c12, ldc, c, c11, ldc, c, c12, ldc);      // U5 = U4 + P3     (final C12)
+        sub(h, y, 0, h, b, b21, ldb, y, 0, h);              // T4 = T2 - B21
+        multiply(h, a, a22, lda, y, 0, h, c, c11, ldc, next); // P4 = A22 * T4  -> C11
+        sub(h, c, c21, ldc, c, c11, ldc, c, c21, ldc);      // U6 = U3 - P4     (final C21)
+        multiply(h, a, a12, lda, b, b21, ldb, c, c11, ldc, next); // P2 = A12 * B21 -> C11
+        add(h, x, 0, h, c, c11, ldc, c, c11, ldc);          // U1 = P1 + P2     (final C11)
+    }
+
+    // Z = X + Y on n x n blocks.
+    private static void add(int n, double[] x, int xo, int ldx, double[] y, int yo, int ldy, double[] z, int zo, int ldz) {
+        for (int i = 0; i < n; i++) {
+            int xi = xo + i * ldx, yi = yo + i * ldy, zi = zo + i * ldz;
+            for (int j = 0; j < n; j++) {
+                z[zi + j] = x[xi + j] + y[yi + j];
+            }
+        }
+    }
+
+    // Z = X - Y on n x n blocks.
+    private static void sub(int n, double[] x, int xo, int ldx, double[] y, int yo, int ldy, double[] z, int zo, int ldz) {
+        for (int i = 0; i < n; i++) {
+            int xi = xo + i * ldx, yi = yo + i * ldy, zi = zo + i * ldz;
+            for (int j = 0; j < n; j++) {
+                z[zi + j] = x[xi + j] - y[yi + j];
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+// Dispatches the (bi, bj) tiles of a block multiplication to a thread model.
+// Every tile owns a disjoint block of C, so tiles never need to synchronize
+// and the only difference between the models is scheduling cost.
+//
+//   PLATFORM   fixed pool of platform threads, one submitted task per tile
+//   FORK_JOIN  work-stealing ForkJoinPool, tile range split recursively
+//   VIRTUAL    one virtual thread per tile
+//
+// Virtual threads run on the JVM's shared carrier pool, which has one carrier
+// per core (-Djdk.virtualThreadScheduler.parallelism changes it); the thread
+// count does not apply to them. For CPU-bound tiles they cannot beat the
+// carriers they run on, so what the comparison shows is their per-task cost.
+abstract class TileScheduler implements AutoCloseable {
+
+    enum Kind { PLATFORM, FORK_JOIN, VIRTUAL }
+
+    interface TileKernel {
+        void compute(int bi, int bj);
+    }
+
+    static TileScheduler create(Kind kind, int threads) {
+        switch (kind) {
+            case PLATFORM:
+                return new ExecutorScheduler(Executors.newFixedThreadPool(threads));
+            case FORK_JOIN:
+                return new ForkJoinScheduler(new ForkJoinPool(threads));
+            default:
+                return new ExecutorScheduler(Executors.newVirtualThreadPerTaskExecutor());
+        }
+    }
+
+    // Runs kernel on every tile of a tileRows x tileCols grid and returns when
+    // all of them are done.
+    abstract void run(int tileRows, int tileCols, TileKernel kernel);
+
+    public abstract void close();
+
+    private static class ExecutorScheduler extends TileScheduler {
+        private final ExecutorService executor;
+
+        ExecutorScheduler(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        void run(int tileRows, int tileCols, TileKernel kernel) {
+            List<Future<?>> tiles = new ArrayList<>(tileRows * tileCols);
+            for (int bi = 0; bi < tileRows; bi++) {
+                for (int bj = 0; bj < tileCols; bj++) {
+                    int ti = bi, tj = bj;
+                    tiles.add(executor.submit(() -> kernel.compute(ti, tj)));
+                }
+            }
+            try {
+                for (Future<?> tile : tiles) {
+                    tile.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tiles", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tile failed", e.getCause());
+            }
+        }
+
+        public void close() {
+            executor.shutdown();
+        }
+    }
+
+    private static class ForkJoinScheduler extends TileScheduler {
+        private final ForkJoinPool pool;
+
+        ForkJoinScheduler(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        void run(int tileRows, int tileCols, TileKernel kernel) {
+            pool.invoke(new TileRange(kernel, tileCols, 0, tileRows * tileCols));
+        }
+
+        public void close() {
+            pool.shutdown();
+        }
+    }
+
+    // Tiles [start, end) in row-major tile order, halved until one is left.
+    // never serialized; the kernel is not Serializable
+    @SuppressWarnings("serial")
+    private static class TileRange extends RecursiveAction {
+        private final TileKernel kernel;
+        private final int tileCols, start, end;
+
+        TileRange(TileKernel kernel, int tileCols, int start, int end) {
+            this.kernel = kernel;
+            this.tileCols = tileCols;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1) {
+                if (start < end) {
+                    kernel.compute(start / tileCols, start % tileCols);
+                }
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new TileRange(kernel, tileCols, start, mid), new TileRange(kernel, tileCols, mid, end));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+// Explicit SIMD versions of the line kernel using the incubating Vector API.
+// The j loop of OnMultLine is an axpy (phc[i][*] += pha[i][k] * phb[k][*]),
+// so it maps directly onto a broadcast of pha[i][k] and one FMA per vector
+// of phb[k][*]. SPECIES_PREFERRED picks the widest shape the CPU supports
+// (4 doubles on AVX2, 8 on AVX-512); the last m_br % length columns are
+// finished with scalar code.
+//
+// Needs --add-modules jdk.incubator.vector at compile time and at run time.
+public class VectorKernels {
+
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    static void multLineRows(double[][] pha, double[][] phb, double[][] phc, int m_ar, int m_br, int rowStart, int rowEnd) {
+        int width = SPECIES.length();
+        int upper = SPECIES.loopBound(m_br);
+        for (int i = rowStart; i < rowEnd; i++) {
+            double[] rowC = phc[i];
+            for (int k = 0; k < m_ar; k++) {
+                double aik = pha[i][k];
+                double[] rowB = phb[k];
+                DoubleVector va = DoubleVector.broadcast(SPECIES, aik);
+                int j = 0;
+                for (; j < upper; j += width) {
+                    DoubleVector vb = DoubleVector.fromArray(SPECIES, rowB, j);
+                    DoubleVector vc = DoubleVector.fromArray(SPECIES, rowC, j);
+                    va.fma(vb, vc).intoArray(rowC, j);
+                }
+                for (; j < m_br; j++) {
+                    rowC[j] += aik * rowB[j];
+                }
+            }
+        }
+    }
+
+    static void multLineRowsFlat(FlatMatrix a, FlatMatrix b, FlatMatrix c, int m_ar, int m_br, int rowStart, int rowEnd) {
+        double[] pha = a.data, phb = b.data, phc = c.data;
+        int width = SPECIES.length();
+        int upper = SPECIES.loopBound(m_br);
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowC = i * m_br;
+            for (int k = 0; k < m_ar; k++) {
+                double aik = pha[i * m_ar + k];
+                int rowB = k * m_br;
+                DoubleVector va = DoubleVector.broadcast(SPECIES, aik);
+                int j = 0;
+                for (; j < upper; j += width) {
+                    DoubleVector vb = DoubleVector.fromArray(SPECIES, phb, rowB + j);
+                    DoubleVector vc = DoubleVector.fromArray(SPECIES, phc, rowC + j);
+                    va.fma(vb, vc).intoArray(phc, rowC + j);
+                }
+                for (; j < m_br; j++) {
+                    phc[rowC + j] += aik * phb[rowB + j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.Random;
+
+// Checks a kernel's C against A * B, independently of the kernel that made it.
+//
+// Matrices are read through element accessors, so any storage (double[][],
+// FlatMatrix, off-heap, float/int/long arrays, sparse) can be checked.
+//
+// freivalds() draws random vectors x and compares A(Bx) with Cx: O(n^2) per
+// round, and a wrong C passes a round only with negligible probability. full()
+// recomputes A * B with PackedGemm and compares every entry: O(n^3), for when
+// the location of an error matters.
+//
+// Errors are relative to |A||B| (row- or entry-wise), the scale of the
+// rounding error in a dot product, so the same tolerance works for inputs of
+// any magnitude. The default tolerance is 2 * k * u for unit roundoff u of the
+// storage type; freivalds() adds 2 * (k + n) * u in double for its own Bx, A(Bx)
+// and Cx sums, which dominate on short-k shapes.
+//
+// Algorithms with only a normwise error bound (Strassen-Winograd) build their
+// Product with normwise(): errors are then relative to max|A| * max|B| (times
+// sum|x| for freivalds) and the default tolerance is the algorithm's bound
+// plus the check's own rounding in those units.
+public class Verifier {
+
+    interface Element {
+        double get(int i, int j);
+    }
+
+    // C (m x n) = A (m x k) * B (k x n), plus the unit roundoff of the type
+    // the kernel computed in (0 for exact integer arithmetic).
+    static class Product {
+        final int m, k, n;
+        final Element a, b, c;
+        final double unitRoundoff;
+        // > 0: max|C - A * B| <= normwiseBound * max|A| * max|B| is checked
+        // instead of the componentwise bound
+        final double normwiseBound;
+
+        Product(int m, int k, int n, Element a, Element b, Element c, double unitRoundoff) {
+            this(m, k, n, a, b, c, unitRoundoff, 0);
+        }
+
+        private Product(int m, int k, int n, Element a, Element b, Element c, double unitRoundoff, double normwiseBound) {
+            this.m = m;
+            this.k = k;
+            this.n = n;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.unitRoundoff = unitRoundoff;
+            this.normwiseBound = normwiseBound;
+        }
+
+        // A double product whose error bound is normwise, with the given constant.
+        static Product normwise(int m, int k, int n, Element a, Element b, Element c, double bound) {
+            return new Product(m, k, n, a, b, c, DOUBLE_ROUNDOFF, bound);
+        }
+
+        boolean isNormwise() {
+            return normwiseBound > 0;
+        }
+
+        double defaultTolerance() {
+            if (isNormwise()) {
+                // the PackedGemm reference is off by up to k * u * (|A||B|)_ij <= k^2 * u
+                return normwiseBound + 2.0 * k * k * DOUBLE_ROUNDOFF;
+            }
+            // integer kernels are exact, but the check itself runs in double
+            return 2.0 * k * Math.max(unitRoundoff, Math.ulp(1.0) / 2);
+        }
+
+        double freivaldsTolerance() {
+            if (isNormwise()) {
+                // (|A||B||x|)_i <= k * max|A| * max|B| * sum|x|
+                return normwiseBound + 2.0 * (k + n) * k * DOUBLE_ROUNDOFF;
+            }
+            // Bx and Cx sum n terms and A(Bx) k terms, all in double
+            return defaultTolerance() + 2.0 * (k + n) * DOUBLE_ROUNDOFF;
+        }
+    }
+
+    static final double DOUBLE_ROUNDOFF = Math.ulp(1.0) / 2;
+    static final double FLOAT_ROUNDOFF = Math.ulp(1.0f) / 2;
+
+    // Unit roundoff of a primitive element type; 0 for integer types.
+    static double unitRoundoff(Class<?> type) {
+        if (type == float.class) {
+            return FLOAT_ROUNDOFF;
+        }
+        return type == double.class ? DOUBLE_ROUNDOFF : 0;
+    }
+
+    static class Check {
+        final String method;
+        final double error, tolerance;
+        final int row, col;
+
+        Check(String method, double error, double tolerance, int row, int col) {
+            this.method = method;
+            this.error = error;
+            this.tolerance = tolerance;
+            this.row = row;
+            this.col = col;
+        }
+
+        boolean passed() {
+            return error <= tolerance;
+        }
+
+        @Override
+        public String toString() {
+            String where = col < 0 ? "row " + row : "(" + row + ", " + col + ")";
+            return String.format("%s %s: max relative error %.3e at %s (tolerance %.3e)",
+                    method, passed() ? "ok" : "FAILED", error, where, tolerance);
+        }
+    }
+
+    // tolerance <= 0 picks the product's default.
+    static Check freivalds(Product p, int rounds, double tolerance, long seed) {
+        if (tolerance <= 0) {
+            tolerance = p.freivaldsTolerance();
+        }
+        Random random = new Random(seed);
+        double[] x = new double[p.n];
+        double[] bx = new double[p.k], bxAbs = new double[p.k];
+        double norms = p.isNormwise() ? maxAbs(p.a, p.m, p.k) * maxAbs(p.b, p.k, p.n) : 0;
+        double worst = 0;
+        int worstRow = 0;
+
+        for (int r = 0; r < rounds; r++) {
+            double xAbs = 0;
+            for (int j = 0; j < p.n; j++) {
+                x[j] = random.nextDouble() * 2 - 1;
+                xAbs += Math.abs(x[j]);
+            }
+            for (int kk = 0; kk < p.k; kk++) {
+                double s = 0, sAbs = 0;
+                for (int j = 0; j < p.n; j++) {
+                    double t = p.b.get(kk, j) * x[j];
+                    s += t;
+                    sAbs += Math.abs(t);
+                }
+                bx[kk] = s;
+                bxAbs[kk] = sAbs;
+            }
+            for (int i = 0; i < p.m; i++) {
+                double abx = 0, scale = 0, cx = 0;
+                for (int kk = 0; kk < p.k; kk++) {
+                    double aik = p.a.get(i, kk);
+                    abx += aik * bx[kk];
+                    scale += Math.abs(aik) * bxAbs[kk];
+                }
+                for (int j = 0; j < p.n; j++) {
+                    cx += p.c.get(i, j) * x[j];
+                }
+                double error = relative(abx - cx, p.isNormwise() ? norms * xAbs : scale);
+                if (error > worst || Double.isNaN(error)) {
+                    worst = error;
+                    worstRow = i;
+                }
+            }
+        }
+        return new Check("freivalds x" + rounds, worst, tolerance, worstRow, -1);
+    }
+
+    static Check full(Product p, double tolerance) {
+        if (tolerance <= 0) {
+            tolerance = p.defaultTolerance();
+        }
+        FlatMatrix a = copy(p.a, p.m, p.k, false);
+        FlatMatrix b = copy(p.b, p.k, p.n, false);
+        FlatMatrix reference = new FlatMatrix(p.m, p.n);
+        PackedGemm.multiply(a, b, reference);
+
+        FlatMatrix scale = null;
+        double norms = 0;
+        if (p.isNormwise()) {
+            norms = maxAbs(p.a, p.m, p.k) * maxAbs(p.b, p.k, p.n);
+        } else {
+            scale = new FlatMatrix(p.m, p.n);
+            PackedGemm.multiply(copy(p.a, p.m, p.k, true), copy(p.b, p.k, p.n, true), scale);
+        }
+
+        double worst = 0;
+        int worstRow = 0, worstCol = 0;
+        for (int i = 0; i < p.m; i++) {
+            for (int j = 0; j < p.n; j++) {
+                double error = relative(reference.get(i, j) - p.c.get(i, j), scale != null ? scale.get(i, j) : norms);
+                if (error > worst || Double.isNaN(error)) {
+                    worst = error;
+                    worstRow = i;
+                    worstCol = j;
+                }
+            }
+        }
+        return new Check("full", worst, tolerance, worstRow, worstCol);
+    }
+
+    private static double relative(double difference, double scale) {
+        if (Double.isNaN(difference)) {
+            return Double.NaN;
+        }
+        return Math.abs(difference) / Math.max(scale, Double.MIN_NORMAL);
+    }
+
+    private static double maxAbs(Element e, int rows, int cols) {
+        double max = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                max = Math.max(max, Math.abs(e.get(i, j)));
+            }
+        }
+        return max;
+    }
+
+    private static FlatMatrix copy(Element e, int rows, int cols, boolean abs) {
+        FlatMatrix m = new FlatMatrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                double v = e.get(i, j);
+                m.set(i, j, abs ? Math.abs(v) : v);
+            }
+        }
+        return m;
+    }
+}
@@ -0,0 +1,62 @@
+import csv
+import sys
+from collections import defaultdict
+
+import matplotlib.pyplot as plt
+
+# CSV written by: java -cp classes ScalingSweep --format=csv --output=scaling.csv
+path = sys.argv[1] if len(sys.argv) > 1 else 'scaling.csv'
+
+# (algorithm, shape, block) -> rows sorted by thread count
+series = defaultdict(list)
+with open(path) as f:
+    for row in csv.DictReader(f):
+        m, k, n = int(row['m']), int(row['k']), int(row['n'])
+        shape = f'{n}' if m == k == n else f'{m}x{k}x{n}'
+        series[(row['algorithm'], shape, int(row['block']))].append(row)
+for rows in series.values():
+    rows.sort(key=lambda r: int(r['threads']))
+
+
+def label(key):
+    algorithm, n, block = key
+    return f'{algorithm} n={n}' + (f' block={block}' if block > 0 else '')
+
+
+# Plotting Speedup, with the ideal linear speedup for reference
+plt.figure(figsize=(12, 6))
+max_threads = 1
+for key, rows in series.items():
+    threads = [int(r['threads']) for r in rows]
+    max_threads = max(max_threads, threads[-1])
+    plt.plot(threads, [float(r['speedup']) for r in rows], label=label(key), marker='o')
+plt.plot([1, max_threads], [1, max_threads], label='Ideal', linestyle='--', color='gray')
+plt.xlabel('Threads')
+plt.ylabel('Speedup')
+plt.title('Speedup vs Threads')
+plt.legend()
+plt.grid(True)
+plt.show()
+
+# Plotting Parallel Efficiency
+plt.figure(figsize=(12, 6))
+for key, rows in series.items():
+    plt.plot([int(r['threads']) for r in rows], [float(r['efficiency']) for r in rows], label=label(key), marker='o')
+plt.xlabel('Threads')
+plt.ylabel('Efficiency')
+plt.title('Parallel Efficiency vs Threads')
+plt.legend()
+plt.grid(True)
+plt.show()
+
+# Plotting Karp-Flatt serial fraction (not defined for 1 thread)
+plt.figure(figsize=(12, 6))
+for key, rows in series.items():
+    rows = [r for r in rows if r['karp_flatt']]
+    plt.plot([int(r['threads']) for r in rows], [float(r['karp_flatt']) for r in rows], label=label(key), marker='o')
+plt.xlabel('Threads')
+plt.ylabel('Serial Fraction')
+plt.title('Karp-Flatt Serial Fraction vs Threads')
+plt.legend()
+plt.grid(True)
+plt.show()